@@ -0,0 +1,137 @@
+package isosolver;
+
+import isosolver.IsohedralTilingSolver.EdgeType;
+import isosolver2.IsohedralTilingSolver2Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The polyhedra given to an {@link IsohedralTilingSolver}, compiled into edge data for the array-based
+ * {@link isosolver2.IsohedralTilingSolver2}, together with the tables to translate its edge indices back.
+ * <p>
+ * The edges of each polyhedron with k vertices are numbered consecutively: first its k edges in order, then their k
+ * reverses in the same order. Edge types are numbered in order of appearance, so that the edge type and match type of
+ * each edge become plain ints, and are only compared with {@link Object#equals} while compiling.
+ */
+final class CompiledPolyhedra {
+	/**
+	 * The edge data to solve
+	 */
+	final IsohedralTilingSolver2Data data;
+
+	/**
+	 * edgePolygons[i] = Index of the polyhedron that edge number i belongs to
+	 */
+	final int[] edgePolygons;
+
+	/**
+	 * edgeFirstVertices[i] = Vertex that edge number i starts at, within its polyhedron
+	 */
+	final int[] edgeFirstVertices;
+
+	/**
+	 * edgeSecondVertices[i] = Vertex that edge number i ends at, within its polyhedron
+	 */
+	final int[] edgeSecondVertices;
+
+	/**
+	 * edgeReversed[i] = Whether edge number i is the reverse of an edge of its polyhedron
+	 */
+	final boolean[] edgeReversed;
+
+	private CompiledPolyhedra(int numEdges) {
+		this.data = new IsohedralTilingSolver2Data(numEdges);
+		this.edgePolygons = new int[numEdges];
+		this.edgeFirstVertices = new int[numEdges];
+		this.edgeSecondVertices = new int[numEdges];
+		this.edgeReversed = new boolean[numEdges];
+	}
+
+	/**
+	 * @param tilingOrder The number of elementary polygons desired around each point of the completed tiling
+	 * @param vertexOrders The vertex orders of each polyhedron
+	 * @param edgeTypes The edge types of each polyhedron
+	 */
+	static CompiledPolyhedra compile(int tilingOrder, List<int[]> vertexOrders, List<EdgeType[]> edgeTypes) {
+		int numEdges = 0;
+		for (int[] orders : vertexOrders) {
+			numEdges += 2 * orders.length;
+		}
+		CompiledPolyhedra compiled = new CompiledPolyhedra(numEdges);
+		int[] rightNeighbors = new int[numEdges];
+		int[] leftNeighbors = new int[numEdges];
+		int[] mirrors = new int[numEdges];
+		int[] leftVertexWeights = new int[numEdges];
+		int[] types = new int[numEdges];
+		int[] matchTypes = new int[numEdges];
+		List<EdgeType> typeList = new ArrayList<>();
+
+		int offset = 0;
+		for (int p = 0; p < vertexOrders.size(); ++p) {
+			int[] orders = vertexOrders.get(p);
+			EdgeType[] polygonTypes = edgeTypes.get(p);
+			int size = orders.length;
+			int reverseOffset = offset + size;
+			for (int i = 0; i < size; ++i) {
+				int edge = offset + i;
+				int next = (i + 1) % size;
+				int previous = (i + size - 1) % size;
+				rightNeighbors[edge] = offset + next;
+				leftNeighbors[edge] = offset + previous;
+				mirrors[edge] = reverseOffset + i;
+				leftVertexWeights[edge] = orders[i];
+				types[edge] = typeId(typeList, polygonTypes[i]);
+				matchTypes[edge] = typeId(typeList, polygonTypes[i].opposite());
+
+				int reverse = reverseOffset + i;
+				rightNeighbors[reverse] = reverseOffset + previous;
+				leftNeighbors[reverse] = reverseOffset + next;
+				mirrors[reverse] = edge;
+				leftVertexWeights[reverse] = orders[next];
+				types[reverse] = typeId(typeList, polygonTypes[i].reverse());
+				matchTypes[reverse] = typeId(typeList, polygonTypes[i].reverse().opposite());
+
+				compiled.edgePolygons[edge] = p;
+				compiled.edgeFirstVertices[edge] = i;
+				compiled.edgeSecondVertices[edge] = next;
+				compiled.edgePolygons[reverse] = p;
+				compiled.edgeFirstVertices[reverse] = next;
+				compiled.edgeSecondVertices[reverse] = i;
+				compiled.edgeReversed[reverse] = true;
+			}
+			offset += 2 * size;
+		}
+		for (EdgeType type : typeList) {
+			if (!type.opposite().opposite().equals(type)) {
+				throw new IllegalArgumentException("Edge type " + type + " is not the opposite of its opposite");
+			}
+			if (!type.opposite().reverse().equals(type.reverse().opposite())) {
+				throw new IllegalArgumentException("Edge type " + type + " has a reverse and an opposite that do not commute");
+			}
+		}
+
+		IsohedralTilingSolver2Data data = compiled.data;
+		data.setDesiredVertexWeight(tilingOrder);
+		data.setEdgeRightNeighbors(rightNeighbors);
+		data.setEdgeLeftNeighbors(leftNeighbors);
+		data.setEdgeMirrors(mirrors);
+		data.setLeftVertexWeights(leftVertexWeights);
+		data.setEdgeTypes(types);
+		data.setMatchTypes(matchTypes);
+		data.setConePointsAllowed(true);
+		// Polyhedra are glued together however they fit, without requiring a connected tiling
+		data.setEnsureConnectivity(false);
+		return compiled;
+	}
+
+	private static int typeId(List<EdgeType> typeList, EdgeType type) {
+		for (int id = 0; id < typeList.size(); ++id) {
+			if (typeList.get(id).equals(type)) {
+				return id;
+			}
+		}
+		typeList.add(type);
+		return typeList.size() - 1;
+	}
+}
@@ -1,11 +1,15 @@
 package isosolver;
 
+import isosolver2.IsohedralTilingSolver2;
+import isosolver2.SolutionView;
+
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 /**
  * Finds isohedral tilings of polyforms in regular grids, using a fast algorithm based on dancing links techniques.
+ * The polyforms are compiled into edge data with int edge types, which is solved by {@link IsohedralTilingSolver2}.
  */
 public class IsohedralTilingSolver {
 	private final static boolean DEBUG = false;
@@ -14,7 +18,7 @@ public class IsohedralTilingSolver {
 	private final List<int[]> VERTEX_ORDERS = new ArrayList<>();
 	private final int TILING_ORDER;
 	private final boolean KEEP_SOLUTIONS;
-	private int steps;
+	private long steps;
 
 	private enum TrivialEdgeType implements EdgeType {
 		EDGE;
@@ -58,149 +62,105 @@ public class IsohedralTilingSolver {
 		EDGE_TYPES.add(edgeTypes);
 	}
 
-	private LinkedEdge sentinel;
-	private int numSolutions;
-	private List<Gluing> solution;
+	/**
+	 * Removes all polyhedra added so far, so that this solver can be reused for another problem with the same tiling order.
+	 */
+	public void clear() {
+		VERTEX_ORDERS.clear();
+		EDGE_TYPES.clear();
+		compiled = null;
+		numSolutions = 0;
+		solutions = null;
+		steps = 0;
+	}
+
+	// Reused across problems, so that its arrays are only allocated again when a larger problem comes along
+	private final IsohedralTilingSolver2 engine = new IsohedralTilingSolver2(0);
+	private CompiledPolyhedra compiled;
+	private long numSolutions;
 	private List<List<Gluing>> solutions;
 
 	public void solve() {
 		init();
-		solveStep();
+		if (KEEP_SOLUTIONS) {
+			boolean[] covered = new boolean[compiled.data.getNumEdges()];
+			numSolutions = engine.solve(solution -> {
+				solutions.add(toGluings(solution, covered));
+				return true;
+			});
+		} else {
+			numSolutions = engine.countSolutions();
+		}
+		steps = engine.getStepsTaken();
+		if (DEBUG) {
+			System.out.println("Steps taken: " + steps + ", solutions found: " + numSolutions);
+		}
 	}
 
+	/**
+	 * Compiles the polyhedra added so far into edge data with int edge and match types, and prepares the search.
+	 *
+	 * @throws IllegalArgumentException If an edge type is not the opposite of its opposite, or if its reverse and
+	 *                                  opposite do not commute
+	 */
 	public void init() {
-		sentinel = new LinkedEdge();
-		int offset = 0;
-		// Create edges and link them together properly
-		for (int p = 0; p < VERTEX_ORDERS.size(); ++p) {
-			int[] vertexOrders = VERTEX_ORDERS.get(p);
-			EdgeType[] edgeTypes = EDGE_TYPES.get(p);
-			int polygonSize = vertexOrders.length;
-			LinkedEdge[] forwardsEdges = new LinkedEdge[polygonSize];
-			for (int i = 0; i < polygonSize; ++i) {
-				forwardsEdges[i] = new LinkedEdge(p, i, ((i + 1) % polygonSize), vertexOrders[i], edgeTypes[i], false, sentinel);
-			}
-			for (int i = 0; i < polygonSize; ++i) {
-				forwardsEdges[i].prevEdge = forwardsEdges[(i + polygonSize - 1) % polygonSize];
-				forwardsEdges[i].nextEdge = forwardsEdges[(i + 1) % polygonSize];
-				forwardsEdges[i].reverseEdge = new LinkedEdge(p, forwardsEdges[i].secondVertex, forwardsEdges[i].firstVertex, forwardsEdges[i].nextEdge.firstVertexOrder, forwardsEdges[i].edgeType.reverse(), true, sentinel);
-				forwardsEdges[i].reverseEdge.reverseEdge = forwardsEdges[i];
-			}
-			for (int i = 0; i < polygonSize; ++i) {
-				forwardsEdges[i].reverseEdge.nextEdge = forwardsEdges[i].prevEdge.reverseEdge;
-				forwardsEdges[i].reverseEdge.prevEdge = forwardsEdges[i].nextEdge.reverseEdge;
-			}
-			offset += polygonSize;
-		}
-		solution = new ArrayList<>();
+		compiled = CompiledPolyhedra.compile(TILING_ORDER, VERTEX_ORDERS, EDGE_TYPES);
+		engine.reset(compiled.data);
 		solutions = new ArrayList<>();
+		numSolutions = 0;
 		steps = 0;
 	}
 
-	private void solveStep() {
-		++steps;
-		if (DEBUG && (steps % 10_000_000 == 0)) {
-			System.out.println("Steps elapsed: " + steps);
-		}
-		if (sentinel.iterNextEdge == sentinel) {
-			// We glued all edges together
-			++numSolutions;
-			if (DEBUG && (numSolutions % 100_000 == 0)) {
-				System.out.println("Solutions found so far: " + numSolutions);
-			}
-			if (KEEP_SOLUTIONS) {
-				solutions.add(new ArrayList<>(solution));
-			}
-			return;
-		}
-		LinkedEdge bestCandidate = sentinel.iterNextEdge;
-		int highestOrder = bestCandidate.firstVertexOrder;
-		for (LinkedEdge e = sentinel.iterNextEdge; e != sentinel; e = e.iterNextEdge) {
-			if (e.firstVertexOrder > highestOrder) {
-				bestCandidate = e;
-				highestOrder = e.firstVertexOrder;
-			}
-		}
-		if (highestOrder > TILING_ORDER) {
-			// Vertex order is already too large and will not become smaller
-			return;
-		}
-		LinkedEdge firstEdge = bestCandidate;
-		for (LinkedEdge secondEdge = sentinel.iterNextEdge; secondEdge != sentinel; secondEdge = secondEdge.iterNextEdge) {
-			if (mayGlue(firstEdge, secondEdge)) {
-				if (DEBUG) {
-					System.out.println("Gluing " + firstEdge + " to " + secondEdge);
-				}
-				solution.add(new Gluing(firstEdge, secondEdge));
-				if (firstEdge == secondEdge) {
-					glueSelf(firstEdge);
-					if (mayGlue(firstEdge.reverseEdge, firstEdge.reverseEdge)) {
-						glueSelf(firstEdge.reverseEdge);
-						solveStep();
-						unglueSelf(firstEdge.reverseEdge);
-					}
-					unglueSelf(firstEdge);
-				} else if (firstEdge == secondEdge.reverseEdge) {
-					glue(firstEdge, secondEdge);
-					solveStep();
-					unglue(firstEdge, secondEdge);
-				} else {
-					glue(firstEdge, secondEdge);
-					if (mayGlue(firstEdge.reverseEdge, secondEdge.reverseEdge)) {
-						glue(firstEdge.reverseEdge, secondEdge.reverseEdge);
-						solveStep();
-						unglue(firstEdge.reverseEdge, secondEdge.reverseEdge);
-					}
-					unglue(firstEdge, secondEdge);
-				}
-				solution.remove(solution.size() - 1);
-				if (DEBUG) {
-					System.out.println("Ungluing " + firstEdge + " from " + secondEdge);
-				}
+	/**
+	 * Lists each gluing of a solution once, from the lowest numbered edge of the gluing, leaving out the gluing of the
+	 * reverse edges that goes with it. Edges are numbered by polyhedron, its edges in order before their reverses.
+	 * <p>
+	 * The gluings are equivalent to those of the earlier linked-edge search, which listed them from the edge it branched
+	 * on, in search order, but may be oriented and ordered differently: the first edge of a gluing is now never reversed
+	 * and belongs to the lower numbered polyhedron, gluings are listed by their first edge, and solutions come in the
+	 * order of {@link IsohedralTilingSolver2}.
+	 */
+	private List<Gluing> toGluings(SolutionView solution, boolean[] covered) {
+		Arrays.fill(covered, false);
+		int[] mirrors = compiled.data.getEdgeMirrors();
+		List<Gluing> gluings = new ArrayList<>();
+		for (int edge = 0; edge < solution.size(); ++edge) {
+			if (!covered[edge]) {
+				int partner = solution.get(edge);
+				covered[edge] = covered[partner] = covered[mirrors[edge]] = covered[mirrors[partner]] = true;
+				gluings.add(new Gluing(compiled, edge, partner));
 			}
 		}
+		return gluings;
 	}
 
-	private boolean mayGlue(LinkedEdge firstEdge, LinkedEdge secondEdge) {
-
-		// Cone point around first vertex of first edge
-		if (firstEdge.prevEdge == secondEdge && illegal_order(firstEdge.firstVertexOrder)) {
-			return false;
-		}
-		// Cone point around first vertex of second edge
-		if (secondEdge.prevEdge == firstEdge && illegal_order(secondEdge.firstVertexOrder)) {
-			return false;
-		}
-		// Length 1 crosscap
-		if (firstEdge.nextEdge == firstEdge && firstEdge == secondEdge && illegal_order(firstEdge.firstVertexOrder)) {
-			return false;
-		}
-		// Torus connection
-		if (firstEdge != secondEdge && firstEdge.nextEdge == firstEdge && secondEdge.nextEdge == secondEdge && illegal_order(firstEdge.firstVertexOrder + secondEdge.firstVertexOrder)) {
-			return false;
-		}
-
-		return firstEdge.edgeType.equals(secondEdge.edgeType.opposite());
-	}
-
-	/** For debugging purposes. */
+	/**
+	 * For debugging purposes. Looks for edges named s1 and s2, in the form "(firstVertex,secondVertex)", among the edges
+	 * of all polyhedra, and prints whether they may be glued to each other before anything has been glued.
+	 *
+	 * @deprecated The search state is no longer kept in linked edges, so the edges are not actually glued, and the check
+	 * only covers the edge types and the cone points and connections the gluing would close. Will be removed.
+	 */
+	@Deprecated
 	public void tryGlueManually(String s1, String s2) {
+		if (compiled == null) {
+			init();
+		}
+		int numEdges = compiled.data.getNumEdges();
+		int[] leftNeighbors = compiled.data.getEdgeLeftNeighbors();
+		int[] rightNeighbors = compiled.data.getEdgeRightNeighbors();
+		int[] vertexOrders = compiled.data.getLeftVertexWeights();
 		boolean found1 = false, found2 = false;
-		for (LinkedEdge e1 = sentinel.iterNextEdge; e1 != sentinel; e1 = e1.iterNextEdge) {
-			if (s1.equals(e1.toString())) {
+		for (int e1 = 0; e1 < numEdges; ++e1) {
+			if (s1.equals(edgeName(e1))) {
 				found1 = true;
-				for (LinkedEdge e2 = sentinel.iterNextEdge; e2 != sentinel; e2 = e2.iterNextEdge) {
-					if (s2.equals(e2.toString())) {
+				for (int e2 = 0; e2 < numEdges; ++e2) {
+					if (s2.equals(edgeName(e2))) {
 						found2 = true;
-						System.out.println("Vertex orders of e1: " + e1.firstVertexOrder + ", " + e1.nextEdge.firstVertexOrder);
-						System.out.println("Vertex orders of e2: " + e2.firstVertexOrder + ", " + e2.nextEdge.firstVertexOrder);
-						if (mayGlue(e1, e2)) {
-							if (e1 == e2) {
-								glueSelf(e1);
-							} else {
-								glue(e1, e2);
-							}
-							System.out.println("Successfully glued");
+						System.out.println("Vertex orders of e1: " + vertexOrders[e1] + ", " + vertexOrders[rightNeighbors[e1]]);
+						System.out.println("Vertex orders of e2: " + vertexOrders[e2] + ", " + vertexOrders[rightNeighbors[e2]]);
+						if (mayGlue(e1, e2, leftNeighbors, rightNeighbors, vertexOrders)) {
+							System.out.println("May glue");
 						} else {
 							System.out.println("Gluing failed, may not glue");
 						}
@@ -212,121 +172,59 @@ public class IsohedralTilingSolver {
 		if (!found2) System.out.println("No edge " + s2 + " found");
 	}
 
-	private boolean illegal_order(int n) {
-		return TILING_ORDER % n != 0;
-	}
-
-	private void glueSelf(LinkedEdge edge) {
-		joinOrders(edge, edge);
-		hideFromIteration(edge);
-		if (edge.nextEdge != edge) {
-			edge.nextEdge.prevEdge = edge.prevEdge;
-			edge.prevEdge.nextEdge = edge.nextEdge;
-		}
-	}
-
-	private void unglueSelf(LinkedEdge edge) {
-		if (edge.nextEdge != edge) {
-			edge.prevEdge.nextEdge = edge;
-			edge.nextEdge.prevEdge = edge;
-		}
-		unhideFromIteration(edge);
-		unjoinOrders(edge, edge);
-	}
-
-	private void glue(LinkedEdge e1, LinkedEdge e2) {
-		joinOrders(e1, e2);
-		hideFromIteration(e1);
-		hideFromIteration(e2);
-		if (e1.prevEdge != e1 && e1.prevEdge != e2) {
-			e1.prevEdge.nextEdge = (e2.nextEdge == e2) ? e1.nextEdge : e2.nextEdge;
-		}
-		if (e1.nextEdge != e1 && e1.nextEdge != e2) {
-			e1.nextEdge.prevEdge = (e2.prevEdge == e2) ? e1.prevEdge : e2.prevEdge;
-		}
-		if (e2.prevEdge != e1 && e2.prevEdge != e2) {
-			e2.prevEdge.nextEdge = (e1.nextEdge == e1) ? e2.nextEdge : e1.nextEdge;
-		}
-		if (e2.nextEdge != e1 && e2.nextEdge != e2) {
-			e2.nextEdge.prevEdge = (e1.prevEdge == e1) ? e2.prevEdge : e1.prevEdge;
-		}
+	private String edgeName(int edge) {
+		return "(" + compiled.edgeFirstVertices[edge] + "," + compiled.edgeSecondVertices[edge] + ")";
 	}
 
-	private void unglue(LinkedEdge e1, LinkedEdge e2) {
-		if (e2.nextEdge != e1 && e2.nextEdge != e2) {
-			e2.nextEdge.prevEdge = e2;
-		}
-		if (e2.prevEdge != e1 && e2.prevEdge != e2) {
-			e2.prevEdge.nextEdge = e2;
-		}
-		if (e1.nextEdge != e1 && e1.nextEdge != e2) {
-			e1.nextEdge.prevEdge = e1;
+	private boolean mayGlue(int e1, int e2, int[] leftNeighbors, int[] rightNeighbors, int[] vertexOrders) {
+		// Cone point around first vertex of first edge
+		if (leftNeighbors[e1] == e2 && illegalOrder(vertexOrders[e1])) {
+			return false;
 		}
-		if (e1.prevEdge != e1 && e1.prevEdge != e2) {
-			e1.prevEdge.nextEdge = e1;
+		// Cone point around first vertex of second edge
+		if (leftNeighbors[e2] == e1 && illegalOrder(vertexOrders[e2])) {
+			return false;
 		}
-		unhideFromIteration(e2);
-		unhideFromIteration(e1);
-		unjoinOrders(e1, e2);
-	}
-
-	private void joinOrders(LinkedEdge e1, LinkedEdge e2) {
-		if (e1 == e2) {
-			if (e1.nextEdge != e1) {
-				e1.nextEdge.firstVertexOrder += e1.firstVertexOrder;
-			}
-		} else {
-			if (e1.nextEdge != e1 && e1.nextEdge != e2) {
-				e1.nextEdge.firstVertexOrder += e2.firstVertexOrder;
-				if (e2.nextEdge == e2) {
-					e1.nextEdge.firstVertexOrder += e1.firstVertexOrder;
-				}
-			}
-			if (e2.nextEdge != e1 && e2.nextEdge != e2) {
-				e2.nextEdge.firstVertexOrder += e1.firstVertexOrder;
-				if (e1.nextEdge == e1) {
-					e2.nextEdge.firstVertexOrder += e2.firstVertexOrder;
-				}
-			}
+		// Length 1 crosscap
+		if (rightNeighbors[e1] == e1 && e1 == e2 && illegalOrder(vertexOrders[e1])) {
+			return false;
 		}
-	}
-
-	private void unjoinOrders(LinkedEdge e1, LinkedEdge e2) {
-		if (e1 == e2) {
-			if (e1.nextEdge != e1) {
-				e1.nextEdge.firstVertexOrder -= e1.firstVertexOrder;
-			}
-		} else {
-			if (e2.nextEdge != e1 && e2.nextEdge != e2) {
-				e2.nextEdge.firstVertexOrder -= e1.firstVertexOrder;
-				if (e1.nextEdge == e1) {
-					e2.nextEdge.firstVertexOrder -= e2.firstVertexOrder;
-				}
-			}
-			if (e1.nextEdge != e1 && e1.nextEdge != e2) {
-				e1.nextEdge.firstVertexOrder -= e2.firstVertexOrder;
-				if (e2.nextEdge == e2) {
-					e1.nextEdge.firstVertexOrder -= e1.firstVertexOrder;
-				}
-			}
+		// Torus connection
+		if (e1 != e2 && rightNeighbors[e1] == e1 && rightNeighbors[e2] == e2 && illegalOrder(vertexOrders[e1] + vertexOrders[e2])) {
+			return false;
 		}
+		return compiled.data.getEdgeTypes()[e1] == compiled.data.getMatchTypes()[e2];
 	}
 
-	private void hideFromIteration(LinkedEdge edge) {
-		edge.iterPrevEdge.iterNextEdge = edge.iterNextEdge;
-		edge.iterNextEdge.iterPrevEdge = edge.iterPrevEdge;
+	private boolean illegalOrder(int n) {
+		return TILING_ORDER % n != 0;
 	}
 
-	private void unhideFromIteration(LinkedEdge edge) {
-		edge.iterNextEdge.iterPrevEdge = edge;
-		edge.iterPrevEdge.iterNextEdge = edge;
+	/**
+	 * @return The number of solutions found, or {@link Integer#MAX_VALUE} if there are more, see {@link #getSolutionCountLong()}
+	 */
+	public int getSolutionCount() {
+		return (int) Math.min(numSolutions, Integer.MAX_VALUE);
 	}
 
-	public int getSolutionCount() {
+	/**
+	 * @return The number of solutions found
+	 */
+	public long getSolutionCountLong() {
 		return numSolutions;
 	}
 
+	/**
+	 * @return The number of search steps taken, or {@link Integer#MAX_VALUE} if there were more, see {@link #getStepCountLong()}
+	 */
 	public int getStepCount() {
+		return (int) Math.min(steps, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @return The number of search steps taken
+	 */
+	public long getStepCountLong() {
 		return steps;
 	}
 
@@ -335,53 +233,6 @@ public class IsohedralTilingSolver {
 		return solutions;
 	}
 
-	private class LinkedEdge {
-		final int polygon;
-		final int firstVertex;
-		final int secondVertex;
-		int firstVertexOrder;
-		final boolean isReversed;
-		final EdgeType edgeType;
-		LinkedEdge reverseEdge;
-		LinkedEdge prevEdge, nextEdge;
-		LinkedEdge iterPrevEdge, iterNextEdge;
-
-		private LinkedEdge() {
-			this.polygon = -1;
-			this.firstVertex = -1;
-			this.secondVertex = -1;
-			this.firstVertexOrder = TILING_ORDER;
-			this.isReversed = false;
-			this.edgeType = null;
-			this.reverseEdge = null;
-			this.prevEdge = null;
-			this.nextEdge = null;
-			this.iterPrevEdge = this;
-			this.iterNextEdge = this;
-		}
-
-		private LinkedEdge(int polygon, int firstVertex, int secondVertex, int firstVertexOrder, EdgeType edgeType, boolean isReversed, LinkedEdge sentinel) {
-			this.polygon = polygon;
-			this.firstVertex = firstVertex;
-			this.secondVertex = secondVertex;
-			this.firstVertexOrder = firstVertexOrder;
-			this.isReversed = isReversed;
-			this.edgeType = edgeType;
-			this.reverseEdge = null;
-			this.prevEdge = null;
-			this.nextEdge = null;
-			this.iterNextEdge = sentinel;
-			this.iterPrevEdge = sentinel.iterPrevEdge;
-			this.iterNextEdge.iterPrevEdge = this;
-			this.iterPrevEdge.iterNextEdge = this;
-		}
-
-		@Override
-		public String toString() {
-			return "(" + firstVertex + "," + secondVertex + ")";
-		}
-	}
-
 	/**
 	 * Defines a pair of edges which are glued together.
 	 *
@@ -389,44 +240,47 @@ public class IsohedralTilingSolver {
 	 * firstEdgeSecondVertex() is glued to secondEdgeFirstVertex().
 	 */
 	public class Gluing {
-		private LinkedEdge e1;
-		private LinkedEdge e2;
+		// The problem the edges belong to, which stays valid after the solver is cleared
+		private final CompiledPolyhedra polyhedra;
+		private final int e1;
+		private final int e2;
 
-		private Gluing(LinkedEdge e1, LinkedEdge e2) {
+		private Gluing(CompiledPolyhedra polyhedra, int e1, int e2) {
+			this.polyhedra = polyhedra;
 			this.e1 = e1;
 			this.e2 = e2;
 		}
 
 		public int firstEdgePolygon() {
-			return e1.polygon;
+			return polyhedra.edgePolygons[e1];
 		}
 
 		public int secondEdgePolygon() {
-			return e2.polygon;
+			return polyhedra.edgePolygons[e2];
 		}
 
 		public int firstEdgeFirstVertex() {
-			return e1.firstVertex;
+			return polyhedra.edgeFirstVertices[e1];
 		}
 
 		public int firstEdgeSecondVertex() {
-			return e1.secondVertex;
+			return polyhedra.edgeSecondVertices[e1];
 		}
 
 		public boolean isFirstEdgeReversed() {
-			return e1.isReversed;
+			return polyhedra.edgeReversed[e1];
 		}
 
 		public int secondEdgeFirstVertex() {
-			return e2.firstVertex;
+			return polyhedra.edgeFirstVertices[e2];
 		}
 
 		public int secondEdgeSecondVertex() {
-			return e2.secondVertex;
+			return polyhedra.edgeSecondVertices[e2];
 		}
 
 		public boolean isSecondEdgeReversed() {
-			return e2.isReversed;
+			return polyhedra.edgeReversed[e2];
 		}
 	}
 
@@ -0,0 +1,187 @@
+package isosolver;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Generates the normalized polyforms of one size depth-first by canonical augmentation, without storing whole levels.
+ * <p>
+ * Every polyform with at least two polygons has leaves: polygons glued to the rest along a single edge, which show up
+ * in its vertex orders as polygonSides - 2 vertices of order 1 between two vertices of higher order. Removing the
+ * first leaf of the normalized vertex orders gives the canonical parent of the polyform. A child found by adding a
+ * polygon to a parent is accepted only if the parent is its canonical parent, and only once per parent, so each
+ * polyform is reached from exactly one parent, which by induction is itself reached exactly once.
+ * <p>
+ * The memory used only depends on the size of the polyforms: one list of accepted children for each level of the
+ * current path.
+ */
+class OrderlyPolyformIterator implements Iterator<Polyform> {
+	private final int polygonSides;
+	private final int numPolygons;
+
+	/**
+	 * children[d][c] = Vertex orders of accepted child number c of the polyform of size d on the current path
+	 */
+	private final int[][][] children;
+
+	/**
+	 * numChildren[d] = Number of accepted children of the polyform of size d on the current path
+	 */
+	private final int[] numChildren;
+
+	/**
+	 * nextChild[d] = Index of the next child of the polyform of size d to visit
+	 */
+	private final int[] nextChild;
+
+	// Scratch space for extending, normalizing and taking apart children, of the length of the largest polyforms
+	private final int[] extended;
+	private final int[] parent;
+	private final int[] normalizedParent;
+
+	// Size of the polyform whose children are visited, or -1 once the generation is over
+	private int depth;
+	private Polyform next;
+
+	OrderlyPolyformIterator(int polygonSides, int numPolygons) {
+		if (polygonSides < 3) {
+			throw new IllegalArgumentException("Polygons must have at least 3 sides");
+		}
+		if (numPolygons < 0) {
+			throw new IllegalArgumentException("Number of polygons must be nonnegative");
+		}
+		this.polygonSides = polygonSides;
+		this.numPolygons = numPolygons;
+		children = new int[numPolygons][][];
+		for (int d = 0; d < numPolygons; ++d) {
+			// A polyform has as many sides to extend at as it has vertices
+			children[d] = new int[length(d)][length(d + 1)];
+		}
+		numChildren = new int[numPolygons];
+		nextChild = new int[numPolygons];
+		extended = new int[length(numPolygons)];
+		parent = new int[length(numPolygons)];
+		normalizedParent = new int[length(numPolygons)];
+
+		int[] zeroForm = new int[]{0, 0};
+		if (numPolygons == 0) {
+			next = new Polyform(zeroForm);
+			depth = -1;
+		} else {
+			expand(zeroForm, 0);
+			depth = 0;
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next != null) {
+			return true;
+		}
+		while (depth >= 0) {
+			if (nextChild[depth] == numChildren[depth]) {
+				--depth;
+				continue;
+			}
+			int[] child = children[depth][nextChild[depth]++];
+			if (depth + 1 == numPolygons) {
+				next = new Polyform(child.clone());
+				return true;
+			}
+			expand(child, depth + 1);
+			++depth;
+		}
+		return false;
+	}
+
+	@Override
+	public Polyform next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Polyform polyform = next;
+		next = null;
+		return polyform;
+	}
+
+	private int length(int size) {
+		return 2 + size * (polygonSides - 2);
+	}
+
+	/**
+	 * Collects the accepted children of a normalized polyform of the given size.
+	 */
+	private void expand(int[] polyform, int size) {
+		int length = length(size);
+		int childLength = length(size + 1);
+		int[][] sizeChildren = children[size];
+		int count = 0;
+		for (int position = 0; position < length; ++position) {
+			int[] child = sizeChildren[count];
+			Polyform.addPolygon(polyform, length, polygonSides, position, extended);
+			Polyform.normalize(extended, childLength, child);
+			if (isNew(sizeChildren, count, child, childLength) && isCanonicalParent(child, childLength, polyform, length, size)) {
+				++count;
+			}
+		}
+		numChildren[size] = count;
+		nextChild[size] = 0;
+	}
+
+	private static boolean isNew(int[][] children, int count, int[] child, int length) {
+		CHILDREN: for (int c = 0; c < count; ++c) {
+			for (int i = 0; i < length; ++i) {
+				if (children[c][i] != child[i]) {
+					continue CHILDREN;
+				}
+			}
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return Whether removing the first leaf of the normalized child gives the parent of the given size
+	 */
+	private boolean isCanonicalParent(int[] child, int childLength, int[] polyform, int length, int size) {
+		if (size == 0) {
+			// A single polygon has the zero-form as its only parent
+			return true;
+		}
+		int leafVertices = polygonSides - 2;
+		int leaf = firstLeaf(child, childLength);
+		// The parent starts after the leaf, at one of the two vertices the leaf was glued to
+		for (int i = 0; i < length; ++i) {
+			parent[i] = child[(leaf + leafVertices + i) % childLength];
+		}
+		--parent[0];
+		--parent[length - 1];
+		Polyform.normalize(parent, length, normalizedParent);
+		for (int i = 0; i < length; ++i) {
+			if (normalizedParent[i] != polyform[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return The first vertex of the first run of polygonSides - 2 vertices of order 1 between vertices of higher order
+	 */
+	private int firstLeaf(int[] child, int childLength) {
+		int leafVertices = polygonSides - 2;
+		for (int start = 0; start < childLength; ++start) {
+			if (child[(start + childLength - 1) % childLength] < 2 || child[(start + leafVertices) % childLength] < 2) {
+				continue;
+			}
+			boolean isLeaf = true;
+			for (int i = 0; i < leafVertices && isLeaf; ++i) {
+				isLeaf = child[(start + i) % childLength] == 1;
+			}
+			if (isLeaf) {
+				return start;
+			}
+		}
+		throw new IllegalStateException("Polyform without leaves");
+	}
+}
@@ -0,0 +1,390 @@
+package isosolver;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A set of vertex order sequences, such as the normalized polyforms of one size, which stores each sequence packed into
+ * a few bits per vertex instead of as an object.
+ * <p>
+ * Each sequence is packed into a record of 64-bit words: its length in the lowest 16 bits, followed by its entries
+ * with a fixed number of bits each, enough for the largest vertex order the set was created for. The records are
+ * appended to segments of storage. An open-addressing hash table of record offsets finds equal sequences, comparing
+ * records word by word. The storage and the table are either on the heap or off-heap in direct buffers.
+ * A normalized 12-omino takes about 24 bytes this way, including its share of the hash table, where a
+ * {@code HashSet<Polyform>} spends about 190 bytes on it.
+ * <p>
+ * Sequences can be visited without creating objects with {@link #forEach(SequenceConsumer)}, while {@link #iterator()}
+ * creates a {@link Polyform} for each sequence as it is reached. The order of iteration is the order of insertion.
+ * This class is not thread-safe.
+ */
+public class PackedPolyformSet implements Iterable<Polyform> {
+
+	private static final int LENGTH_BITS = 16;
+	private static final int MAX_LENGTH = (1 << LENGTH_BITS) - 1;
+
+	// Records never span segments, so a segment must hold the longest possible record
+	private static final int SEGMENT_SHIFT = 20;
+	private static final int SEGMENT_WORDS = 1 << SEGMENT_SHIFT;
+	private static final int SEGMENT_MASK = SEGMENT_WORDS - 1;
+	private static final int INITIAL_SEGMENT_WORDS = 1 << 10;
+
+	private static final int INITIAL_TABLE_SIZE = 1 << 10;
+	// The largest table that fits into a single direct buffer
+	private static final int MAX_TABLE_SIZE = 1 << 28;
+
+	private final int maxVertexOrder;
+	private final int bitsPerEntry;
+	private final boolean offHeap;
+
+	private final List<LongBuffer> segments = new ArrayList<>();
+	private LongBuffer currentSegment;
+	// Number of words used in the current segment
+	private int currentSegmentWords;
+	// segmentEnds[i] = Number of words used in segment number i, once it is full
+	private int[] segmentEnds = new int[1];
+
+	/**
+	 * table[i] = Offset of a record plus one, or 0 for an empty slot. Offsets count words from the start of the first
+	 * segment.
+	 */
+	private IntBuffer table;
+	private int size;
+
+	// Packed form of the sequence being added or looked up
+	private long[] scratch = new long[1];
+
+	/**
+	 * Receives the sequences of a set one at a time.
+	 */
+	public interface SequenceConsumer {
+		/**
+		 * @param vertexOrders Holds the sequence in its first length entries. Only valid during this call.
+		 * @param length The length of the sequence
+		 */
+		void accept(int[] vertexOrders, int length);
+	}
+
+	/**
+	 * @param maxVertexOrder The largest vertex order that will be added
+	 * @param offHeap Whether to keep the packed sequences in direct buffers outside of the heap
+	 */
+	public PackedPolyformSet(int maxVertexOrder, boolean offHeap) {
+		if (maxVertexOrder < 0) {
+			throw new IllegalArgumentException("Maximum vertex order must be nonnegative");
+		}
+		this.maxVertexOrder = maxVertexOrder;
+		this.bitsPerEntry = Math.max(1, 32 - Integer.numberOfLeadingZeros(maxVertexOrder));
+		this.offHeap = offHeap;
+		this.table = allocateTable(INITIAL_TABLE_SIZE);
+	}
+
+	/**
+	 * @return The number of sequences in the set
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean contains(int[] vertexOrders, int length) {
+		int words = pack(vertexOrders, length);
+		for (int slot = slot(hash(scratch, words)); table.get(slot) != 0; slot = (slot + 1) & (table.capacity() - 1)) {
+			if (recordEquals(table.get(slot) - 1, words)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds a sequence to the set, unless an equal sequence is in it already.
+	 *
+	 * @param vertexOrders Holds the sequence in its first length entries, which is copied
+	 * @param length The length of the sequence
+	 * @return Whether the sequence was added
+	 */
+	public boolean add(int[] vertexOrders, int length) {
+		int words = pack(vertexOrders, length);
+		int slot = slot(hash(scratch, words));
+		for (; table.get(slot) != 0; slot = (slot + 1) & (table.capacity() - 1)) {
+			if (recordEquals(table.get(slot) - 1, words)) {
+				return false;
+			}
+		}
+		table.put(slot, appendRecord(words) + 1);
+		++size;
+		// Keep the table at most half full
+		if (2 * size > table.capacity()) {
+			grow();
+		}
+		return true;
+	}
+
+	public boolean add(Polyform polyform) {
+		return add(polyform.getVertexOrders(), polyform.getVertexOrders().length);
+	}
+
+	/**
+	 * Passes each sequence to the consumer, in order of insertion, through one reused array.
+	 */
+	public void forEach(SequenceConsumer consumer) {
+		int[] vertexOrders = new int[0];
+		for (int offset = 0, segment = 0; segment < segments.size(); ++segment, offset = segment << SEGMENT_SHIFT) {
+			int end = segmentWords(segment);
+			for (int position = 0; position < end; ) {
+				int length = (int) word(offset + position) & MAX_LENGTH;
+				if (vertexOrders.length < length) {
+					vertexOrders = new int[Math.max(length, 2 * vertexOrders.length)];
+				}
+				unpack(offset + position, vertexOrders, length);
+				consumer.accept(vertexOrders, length);
+				position += recordWords(length);
+			}
+		}
+	}
+
+	/**
+	 * Returns the sequences as polyforms, in order of insertion. Each polyform is created as it is reached.
+	 */
+	@Override
+	public Iterator<Polyform> iterator() {
+		return new Iterator<Polyform>() {
+			private int segment = 0;
+			private int position = 0;
+
+			@Override
+			public boolean hasNext() {
+				while (segment < segments.size()) {
+					if (position < segmentWords(segment)) {
+						return true;
+					}
+					++segment;
+					position = 0;
+				}
+				return false;
+			}
+
+			@Override
+			public Polyform next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				int offset = (segment << SEGMENT_SHIFT) + position;
+				int length = (int) word(offset) & MAX_LENGTH;
+				int[] vertexOrders = new int[length];
+				unpack(offset, vertexOrders, length);
+				position += recordWords(length);
+				return new Polyform(vertexOrders);
+			}
+		};
+	}
+
+	/**
+	 * Removes all sequences, releasing the storage.
+	 */
+	public void clear() {
+		segments.clear();
+		currentSegment = null;
+		currentSegmentWords = 0;
+		segmentEnds = new int[1];
+		table = allocateTable(INITIAL_TABLE_SIZE);
+		size = 0;
+	}
+
+	/**
+	 * @return The number of bytes used by the packed sequences and the hash table
+	 */
+	public long sizeInBytes() {
+		long words = 0;
+		for (LongBuffer segment : segments) {
+			words += segment.capacity();
+		}
+		return words * Long.BYTES + (long) table.capacity() * Integer.BYTES;
+	}
+
+	/**
+	 * Packs a sequence into the scratch words.
+	 *
+	 * @return The number of words of the record
+	 */
+	private int pack(int[] vertexOrders, int length) {
+		if (length < 2 || length > MAX_LENGTH || length > vertexOrders.length) {
+			// Shorter sequences are no polyforms
+			throw new IllegalArgumentException("Sequence length must be between 2 and " + MAX_LENGTH);
+		}
+		int words = recordWords(length);
+		if (scratch.length < words) {
+			scratch = new long[Math.max(words, 2 * scratch.length)];
+		}
+		long word = length;
+		int bit = LENGTH_BITS;
+		int wordIndex = 0;
+		for (int i = 0; i < length; ++i) {
+			long entry = vertexOrders[i];
+			if (entry < 0 || entry > maxVertexOrder) {
+				throw new IllegalArgumentException("Vertex order " + entry + " is not between 0 and " + maxVertexOrder);
+			}
+			word |= entry << bit;
+			bit += bitsPerEntry;
+			if (bit >= Long.SIZE) {
+				scratch[wordIndex++] = word;
+				bit -= Long.SIZE;
+				// The part of the entry that did not fit into the previous word, if any
+				word = bit == 0 ? 0 : entry >>> (bitsPerEntry - bit);
+			}
+		}
+		if (wordIndex < words) {
+			scratch[wordIndex] = word;
+		}
+		return words;
+	}
+
+	private void unpack(int offset, int[] vertexOrders, int length) {
+		long mask = (1L << bitsPerEntry) - 1;
+		long word = word(offset);
+		int bit = LENGTH_BITS;
+		for (int i = 0; i < length; ++i) {
+			if (bit == Long.SIZE) {
+				word = word(++offset);
+				bit = 0;
+			}
+			long entry = word >>> bit;
+			bit += bitsPerEntry;
+			if (bit > Long.SIZE) {
+				// The rest of the entry is at the start of the next word
+				word = word(++offset);
+				bit -= Long.SIZE;
+				entry |= word << (bitsPerEntry - bit);
+			}
+			vertexOrders[i] = (int) (entry & mask);
+		}
+	}
+
+	private int recordWords(int length) {
+		return (LENGTH_BITS + length * bitsPerEntry + Long.SIZE - 1) / Long.SIZE;
+	}
+
+	private boolean recordEquals(int offset, int words) {
+		for (int i = 0; i < words; ++i) {
+			if (word(offset + i) != scratch[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private long word(int offset) {
+		return segments.get(offset >>> SEGMENT_SHIFT).get(offset & SEGMENT_MASK);
+	}
+
+	/**
+	 * @return The offset of the new record holding the scratch words
+	 */
+	private int appendRecord(int words) {
+		if (currentSegment == null || currentSegmentWords + words > SEGMENT_WORDS) {
+			if ((long) (segments.size() + 1) << SEGMENT_SHIFT >= Integer.MAX_VALUE) {
+				throw new IllegalStateException("Packed polyform set is full");
+			}
+			if (currentSegment != null) {
+				if (segmentEnds.length < segments.size()) {
+					segmentEnds = Arrays.copyOf(segmentEnds, 2 * segments.size());
+				}
+				segmentEnds[segments.size() - 1] = currentSegmentWords;
+			}
+			// Only the first segment starts small, so that small sets stay small
+			currentSegment = allocateSegment(segments.isEmpty() ? INITIAL_SEGMENT_WORDS : SEGMENT_WORDS);
+			segments.add(currentSegment);
+			currentSegmentWords = 0;
+		}
+		if (currentSegmentWords + words > currentSegment.capacity()) {
+			int capacity = currentSegment.capacity();
+			while (capacity < currentSegmentWords + words) {
+				capacity *= 2;
+			}
+			LongBuffer grown = allocateSegment(capacity);
+			for (int i = 0; i < currentSegmentWords; ++i) {
+				grown.put(i, currentSegment.get(i));
+			}
+			currentSegment = grown;
+			segments.set(segments.size() - 1, grown);
+		}
+		int offset = ((segments.size() - 1) << SEGMENT_SHIFT) + currentSegmentWords;
+		for (int i = 0; i < words; ++i) {
+			currentSegment.put(currentSegmentWords++, scratch[i]);
+		}
+		return offset;
+	}
+
+	private IntBuffer allocateTable(int slots) {
+		return offHeap
+				? ByteBuffer.allocateDirect(slots * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer()
+				: IntBuffer.allocate(slots);
+	}
+
+	private LongBuffer allocateSegment(int words) {
+		return offHeap
+				? ByteBuffer.allocateDirect(words * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer()
+				: LongBuffer.allocate(words);
+	}
+
+	/**
+	 * @return The number of words used in a segment, which may leave a few words at the end of a full segment unused
+	 */
+	private int segmentWords(int segment) {
+		return segment == segments.size() - 1 ? currentSegmentWords : segmentEnds[segment];
+	}
+
+	private void grow() {
+		if (table.capacity() >= MAX_TABLE_SIZE) {
+			throw new IllegalStateException("Packed polyform set is full");
+		}
+		IntBuffer oldTable = table;
+		table = allocateTable(2 * oldTable.capacity());
+		for (int oldSlot = 0; oldSlot < oldTable.capacity(); ++oldSlot) {
+			int entry = oldTable.get(oldSlot);
+			if (entry != 0) {
+				int offset = entry - 1;
+				int words = recordWords((int) word(offset) & MAX_LENGTH);
+				long hash = HASH_SEED;
+				for (int i = 0; i < words; ++i) {
+					hash = hashStep(hash, word(offset + i));
+				}
+				int slot = slot(hash);
+				while (table.get(slot) != 0) {
+					slot = (slot + 1) & (table.capacity() - 1);
+				}
+				table.put(slot, entry);
+			}
+		}
+	}
+
+	private static final long HASH_SEED = 0x2545f4914f6cdd1dL;
+
+	private static long hash(long[] words, int numWords) {
+		long hash = HASH_SEED;
+		for (int i = 0; i < numWords; ++i) {
+			hash = hashStep(hash, words[i]);
+		}
+		return hash;
+	}
+
+	private static long hashStep(long hash, long word) {
+		hash = (hash ^ word) * 0x9e3779b97f4a7c15L;
+		return hash ^ (hash >>> 29);
+	}
+
+	private int slot(long hash) {
+		return (int) (hash ^ (hash >>> 32)) & (table.capacity() - 1);
+	}
+}
@@ -3,9 +3,13 @@ package isosolver;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class Polyform implements Comparable<Polyform> {
 	private final int[] vertexOrders;
@@ -60,6 +64,16 @@ public class Polyform implements Comparable<Polyform> {
 			throw new IllegalArgumentException("Additional polygon must have at least 2 sides");
 		}
 		int[] newVertexOrders = new int[length + sides - 2];
+		addPolygon(vertexOrders, length, sides, position, newVertexOrders);
+		return new Polyform(newVertexOrders);
+	}
+
+	/**
+	 * Writes the vertex orders of the polyform with the given vertex orders, extended by a polygon at the given side,
+	 * into the first length + sides - 2 entries of newVertexOrders.
+	 */
+	static void addPolygon(int[] vertexOrders, int length, int sides, int position, int[] newVertexOrders) {
+		int newLength = length + sides - 2;
 		for (int i = 0; i < sides-2; ++i) {
 			newVertexOrders[i] = 1;
 		}
@@ -67,55 +81,97 @@ public class Polyform implements Comparable<Polyform> {
 			newVertexOrders[j + sides - 2] = vertexOrders[(j + position) % length];
 		}
 		++newVertexOrders[sides - 2];
-		++newVertexOrders[newVertexOrders.length-1];
-		return new Polyform(newVertexOrders);
+		++newVertexOrders[newLength-1];
 	}
 
 	public Polyform normalize() {
-		return new Polyform(normalize(vertexOrders));
-	}
-
-	private static int[] normalize(int[] array) {
-		int[] minRotated = rotateMinimal(array);
-		int[] minRotatedReflected = rotateMinimal(reverse(array));
-		for (int i = 0; i < array.length; ++i) {
-			if (minRotated[i] != minRotatedReflected[i]) {
-				if (minRotated[i] < minRotatedReflected[i]) {
-					return minRotated;
-				} else {
-					return minRotatedReflected;
-				}
+		int[] normalized = new int[length];
+		normalize(vertexOrders, length, normalized);
+		return new Polyform(normalized);
+	}
+
+	/**
+	 * Writes the lexicographically smallest rotation of the first n entries of the array or of their reverse into the
+	 * first n entries of normalized, in linear time and without building the rotated or reversed arrays.
+	 */
+	static void normalize(int[] array, int n, int[] normalized) {
+		int forwardStart = leastRotation(array, n);
+		int reverseStart = leastReverseRotation(array, n);
+		// Entry k of the rotation of the reverse starting at reverseStart is array[reverseIndex - k], modulo n
+		int reverseIndex = n - 1 - reverseStart;
+		boolean reversed = false;
+		for (int k = 0; k < n; ++k) {
+			int forwardEntry = array[wrap(forwardStart + k, n)];
+			int reverseEntry = array[wrap(reverseIndex - k + n, n)];
+			if (forwardEntry != reverseEntry) {
+				reversed = reverseEntry < forwardEntry;
+				break;
 			}
 		}
-		return minRotated;
+		for (int k = 0; k < n; ++k) {
+			normalized[k] = reversed ? array[wrap(reverseIndex - k + n, n)] : array[wrap(forwardStart + k, n)];
+		}
 	}
 
-	private static int[] reverse(int[] array) {
-		int[] reversedArray = new int[array.length];
-		for (int i = 0; i < array.length; ++i) {
-			reversedArray[array.length-i-1] = array[i];
+	/**
+	 * Finds the start of the lexicographically smallest rotation with Duval's algorithm, which factors the doubled
+	 * array into Lyndon words: the smallest rotation starts at the last factor that starts in the first half.
+	 */
+	private static int leastRotation(int[] array, int n) {
+		int i = 0;
+		int start = 0;
+		while (i < n) {
+			start = i;
+			int j = i + 1;
+			int k = i;
+			while (j < 2 * n) {
+				int current = array[wrap(j, n)];
+				int previous = array[wrap(k, n)];
+				if (previous > current) {
+					break;
+				}
+				k = previous < current ? i : k + 1;
+				++j;
+			}
+			while (i <= k) {
+				i += j - k;
+			}
 		}
-		return reversedArray;
+		return start;
 	}
 
-	private static int[] rotateMinimal(int[] array) {
-		int[] doubleArray = new int[2*array.length];
-		for (int i = 0; i < array.length; ++i) {
-			doubleArray[i] = array[i];
-			doubleArray[i+array.length] = array[i];
-		}
-		int bestOffset = 0;
-		for (int offset = 1; offset < array.length; ++offset) {
-			for (int j = 0; j < array.length; ++j) {
-				if (doubleArray[bestOffset+j] != doubleArray[offset+j]) {
-					if (doubleArray[bestOffset+j] > doubleArray[offset+j]) {
-						bestOffset = offset;
-					}
+	/**
+	 * Like {@link #leastRotation}, but for the reverse of the array, where entry i of the reverse is array[n - 1 - i].
+	 * Kept separate from the forward case, since this runs for every extension during the generation.
+	 */
+	private static int leastReverseRotation(int[] array, int n) {
+		int i = 0;
+		int start = 0;
+		while (i < n) {
+			start = i;
+			int j = i + 1;
+			int k = i;
+			while (j < 2 * n) {
+				int current = array[n - 1 - wrap(j, n)];
+				int previous = array[n - 1 - wrap(k, n)];
+				if (previous > current) {
 					break;
 				}
+				k = previous < current ? i : k + 1;
+				++j;
+			}
+			while (i <= k) {
+				i += j - k;
 			}
 		}
-		return Arrays.copyOfRange(doubleArray, bestOffset, bestOffset+array.length);
+		return start;
+	}
+
+	/**
+	 * @return The index i, which is less than 2 n, reduced modulo n
+	 */
+	private static int wrap(int i, int n) {
+		return i < n ? i : i - n;
 	}
 
 	@Override
@@ -143,24 +199,137 @@ public class Polyform implements Comparable<Polyform> {
 	}
 
 	public static List<Polyform> getAllPolyforms(int polygonSides, int numPolygons) {
-		Set<Polyform> oldPolyforms = new HashSet<Polyform>();
-		Set<Polyform> newPolyforms = new HashSet<Polyform>();
-		oldPolyforms.add(new Polyform(new int[]{0,0})); // Zero-form
+		ArrayList<Polyform> ans = new ArrayList<>();
+		for (Polyform p : getAllPolyformSet(polygonSides, numPolygons, false)) {
+			ans.add(p);
+		}
+		Collections.sort(ans);
+		return ans;
+	}
+
+	/**
+	 * Returns the same normalized polyforms as {@link #getAllPolyforms(int, int)}, in no particular order, generated
+	 * lazily and depth-first, see {@link OrderlyPolyformIterator}. Only the current path of the generation is kept in
+	 * memory, however many polyforms there are.
+	 *
+	 * @param polygonSides The number of sides of each polygon, at least 3
+	 */
+	public static Iterator<Polyform> getPolyformIterator(int polygonSides, int numPolygons) {
+		return new OrderlyPolyformIterator(polygonSides, numPolygons);
+	}
+
+	/**
+	 * Returns the polyforms of {@link #getPolyformIterator} as a sequential stream.
+	 */
+	public static Stream<Polyform> getPolyformStream(int polygonSides, int numPolygons) {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(getPolyformIterator(polygonSides, numPolygons), Spliterator.DISTINCT | Spliterator.NONNULL), false);
+	}
+
+	/**
+	 * Generates the same sorted list as {@link #getAllPolyforms(int, int)}, extending and normalizing the polyforms of
+	 * each level in parallel in the given pool.
+	 * <p>
+	 * Each level is kept in shards, which are packed sets that each hold the polyforms with some range of hash values.
+	 * The shards of a level are extended in parallel, and every extension is added to the shard of the next level its
+	 * hash value belongs to, which is locked only for the addition.
+	 */
+	public static List<Polyform> getAllPolyforms(int polygonSides, int numPolygons, ForkJoinPool pool) {
+		if (polygonSides < 2) {
+			throw new IllegalArgumentException("Polygons must have at least 2 sides");
+		}
+		int maxVertexOrder = Math.max(numPolygons, 1);
+		int maxLength = 2 + numPolygons * (polygonSides - 2);
+		// Enough shards to keep the workers busy and rarely waiting for each other
+		int numShards = Integer.highestOneBit(8 * pool.getParallelism() - 1) << 1;
+		PackedPolyformSet[] oldShards = newShards(numShards, maxVertexOrder);
+		int[] zeroForm = new int[]{0,0};
+		oldShards[shard(zeroForm, 2, numShards)].add(zeroForm, 2);
 		for (int n = 0; n < numPolygons; ++n) {
-			for (Polyform p : oldPolyforms) {
-				for (int i = 0; i < p.length; ++i) {
-					Polyform np = p.addPolygon(polygonSides, i);
-					newPolyforms.add(np.normalize());
-				}
+			PackedPolyformSet[] sourceShards = oldShards;
+			PackedPolyformSet[] targetShards = newShards(numShards, maxVertexOrder);
+			pool.submit(() -> Arrays.stream(sourceShards).parallel().forEach(source -> {
+				int[] extended = new int[maxLength];
+				int[] normalized = new int[maxLength];
+				source.forEach((vertexOrders, length) -> {
+					int newLength = length + polygonSides - 2;
+					for (int i = 0; i < length; ++i) {
+						addPolygon(vertexOrders, length, polygonSides, i, extended);
+						normalize(extended, newLength, normalized);
+						PackedPolyformSet target = targetShards[shard(normalized, newLength, numShards)];
+						synchronized (target) {
+							target.add(normalized, newLength);
+						}
+					}
+				});
+			})).join();
+			oldShards = targetShards;
+		}
+		ArrayList<Polyform> ans = new ArrayList<>();
+		for (PackedPolyformSet shard : oldShards) {
+			for (Polyform p : shard) {
+				ans.add(p);
 			}
-			Set<Polyform> swap = newPolyforms;
+		}
+		Collections.sort(ans);
+		return ans;
+	}
+
+	private static PackedPolyformSet[] newShards(int numShards, int maxVertexOrder) {
+		PackedPolyformSet[] shards = new PackedPolyformSet[numShards];
+		for (int i = 0; i < numShards; ++i) {
+			shards[i] = new PackedPolyformSet(maxVertexOrder, false);
+		}
+		return shards;
+	}
+
+	/**
+	 * @return The shard that the sequence in the first length entries of the array belongs to, out of a power of two
+	 */
+	private static int shard(int[] vertexOrders, int length, int numShards) {
+		int hash = 1;
+		for (int i = 0; i < length; ++i) {
+			hash = 31 * hash + vertexOrders[i];
+		}
+		// Spread the bits, since nearby polyforms differ in few entries
+		hash *= 0x9e3779b9;
+		return (hash ^ (hash >>> 16)) & (numShards - 1);
+	}
+
+	/**
+	 * Generates the normalized polyforms like {@link #getAllPolyforms}, but keeps them packed, in no particular order.
+	 * Each level of the generation is held in a {@link PackedPolyformSet}, and no polyform objects are created, so this
+	 * fits much larger generations into the heap. Iterate over the result to get the polyforms one at a time.
+	 *
+	 * @param offHeap Whether to keep the polyforms outside of the heap
+	 */
+	public static PackedPolyformSet getAllPolyformSet(int polygonSides, int numPolygons, boolean offHeap) {
+		if (polygonSides < 2) {
+			throw new IllegalArgumentException("Polygons must have at least 2 sides");
+		}
+		// Every polygon adds at most 1 to the order of a vertex
+		int maxVertexOrder = Math.max(numPolygons, 1);
+		PackedPolyformSet oldPolyforms = new PackedPolyformSet(maxVertexOrder, offHeap);
+		PackedPolyformSet newPolyforms = new PackedPolyformSet(maxVertexOrder, offHeap);
+		oldPolyforms.add(new int[]{0,0}, 2); // Zero-form
+		int maxLength = 2 + numPolygons * (polygonSides - 2);
+		int[] extended = new int[maxLength];
+		int[] normalized = new int[maxLength];
+		for (int n = 0; n < numPolygons; ++n) {
+			PackedPolyformSet target = newPolyforms;
+			oldPolyforms.forEach((vertexOrders, length) -> {
+				int newLength = length + polygonSides - 2;
+				for (int i = 0; i < length; ++i) {
+					addPolygon(vertexOrders, length, polygonSides, i, extended);
+					normalize(extended, newLength, normalized);
+					target.add(normalized, newLength);
+				}
+			});
+			PackedPolyformSet swap = newPolyforms;
 			newPolyforms = oldPolyforms;
 			oldPolyforms = swap;
 			newPolyforms.clear();
 		}
-		ArrayList<Polyform> ans = new ArrayList<>(oldPolyforms);
-		Collections.sort(ans);
-		return ans;
+		return oldPolyforms;
 	}
 
 	@Override
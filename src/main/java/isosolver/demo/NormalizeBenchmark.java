@@ -0,0 +1,70 @@
+package isosolver.demo;
+
+import isosolver.Polyform;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the generation of all abstract 10-ominoes: the time for the whole generation, and the time spent
+ * normalizing the extensions of the 9-ominoes, which is the last and largest step of the generation.
+ * Also measures the normalization of long boundaries with a short period, where comparing rotations one by one takes
+ * quadratic time.
+ * Every measurement is repeated several times and the fastest run is reported.
+ */
+public class NormalizeBenchmark {
+	private static final int RUNS = 20;
+	private static final int POLYGON_SIDES = 4;
+	private static final int NUM_POLYGONS = 10;
+	private static final int[] PERIODIC_LENGTHS = {100, 1000, 10000};
+
+	public static void main(String[] args) {
+		long bestGenerationNanos = Long.MAX_VALUE;
+		int numPolyforms = 0;
+		for (int run = 0; run < RUNS; ++run) {
+			long start = System.nanoTime();
+			numPolyforms = Polyform.getAllPolyforms(POLYGON_SIDES, NUM_POLYGONS).size();
+			bestGenerationNanos = Math.min(bestGenerationNanos, System.nanoTime() - start);
+		}
+		System.out.printf("Generation: %d %s, %d ms%n", numPolyforms, Polyform.getPolyformName(POLYGON_SIDES, NUM_POLYGONS, true), bestGenerationNanos / 1000000);
+
+		List<Polyform> extensions = new ArrayList<>();
+		for (Polyform p : Polyform.getAllPolyforms(POLYGON_SIDES, NUM_POLYGONS - 1)) {
+			for (int i = 0; i < p.getVertexOrders().length; ++i) {
+				extensions.add(p.addPolygon(POLYGON_SIDES, i));
+			}
+		}
+		long bestNormalizeNanos = Long.MAX_VALUE;
+		long checksum = 0;
+		for (int run = 0; run < RUNS; ++run) {
+			// Keeps the normalized polyforms from being optimized away
+			checksum = 0;
+			long start = System.nanoTime();
+			for (Polyform p : extensions) {
+				checksum += p.normalize().getVertexOrders()[0];
+			}
+			bestNormalizeNanos = Math.min(bestNormalizeNanos, System.nanoTime() - start);
+		}
+		System.out.printf("Normalization: %d extensions, %d ms, %.1f ns/extension (checksum %d)%n",
+				extensions.size(), bestNormalizeNanos / 1000000, (double) bestNormalizeNanos / extensions.size(), checksum);
+
+		for (int length : PERIODIC_LENGTHS) {
+			// Alternating convex and concave corners, like the boundary of a long staircase, starting off the minimum
+			int[] vertexOrders = new int[length];
+			for (int i = 0; i < length; ++i) {
+				vertexOrders[i] = i % 2 == 0 ? 3 : 1;
+			}
+			Polyform p = new Polyform(vertexOrders);
+			int repeats = Math.max(1, 10000000 / length / length);
+			long bestNanos = Long.MAX_VALUE;
+			for (int run = 0; run < RUNS; ++run) {
+				long start = System.nanoTime();
+				for (int r = 0; r < repeats; ++r) {
+					p.normalize();
+				}
+				bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+			}
+			System.out.printf("Periodic boundary of length %d: %.1f us%n", length, bestNanos / 1000.0 / repeats);
+		}
+	}
+}
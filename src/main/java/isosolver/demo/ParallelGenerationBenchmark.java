@@ -0,0 +1,38 @@
+package isosolver.demo;
+
+import isosolver.Polyform;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares the sequential and the parallel generation of all abstract 11-ominoes, and checks that both give the same
+ * sorted list. The parallel generation runs in a pool with one worker per processor.
+ * Every generation is repeated several times and the fastest run is reported.
+ */
+public class ParallelGenerationBenchmark {
+	private static final int RUNS = 5;
+	private static final int POLYGON_SIDES = 4;
+	private static final int NUM_POLYGONS = 11;
+
+	public static void main(String[] args) {
+		ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		List<Polyform> sequential = null;
+		List<Polyform> parallel = null;
+		long bestSequentialNanos = Long.MAX_VALUE;
+		long bestParallelNanos = Long.MAX_VALUE;
+		for (int run = 0; run < RUNS; ++run) {
+			long start = System.nanoTime();
+			sequential = Polyform.getAllPolyforms(POLYGON_SIDES, NUM_POLYGONS);
+			bestSequentialNanos = Math.min(bestSequentialNanos, System.nanoTime() - start);
+			start = System.nanoTime();
+			parallel = Polyform.getAllPolyforms(POLYGON_SIDES, NUM_POLYGONS, pool);
+			bestParallelNanos = Math.min(bestParallelNanos, System.nanoTime() - start);
+		}
+		pool.shutdown();
+		System.out.printf("%d %s, %d workers%n", sequential.size(), Polyform.getPolyformName(POLYGON_SIDES, NUM_POLYGONS, true), pool.getParallelism());
+		System.out.printf("Sequential: %d ms%n", bestSequentialNanos / 1000000);
+		System.out.printf("Parallel: %d ms, speedup %.2f%n", bestParallelNanos / 1000000, (double) bestSequentialNanos / bestParallelNanos);
+		System.out.println("Same result: " + sequential.equals(parallel));
+	}
+}
@@ -0,0 +1,208 @@
+package isosolver.demo;
+
+import isosolver.IsohedralTilingSolver;
+import isosolver.Polyform;
+import isosolver2.ResultCache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Solves a stream of polyforms for isohedral tilings of a fixed order, as a pipeline:
+ * a producer thread feeds the polyforms into a bounded queue, a fixed number of worker threads solve them with one
+ * reusable solver each, and the calling thread collects the results as they complete.
+ * At most a bounded number of polyforms are held by the pipeline at any time, however many polyforms there are.
+ */
+public class TilingSweep {
+	private final int tilingOrder;
+	private final int numWorkers;
+	private final int queueCapacity;
+	private ResultCache resultCache;
+
+	/**
+	 * @param tilingOrder The number of elementary polygons desired around each point of the completed tiling.
+	 * @param numWorkers The number of solver threads.
+	 * @param queueCapacity The number of polyforms and results that may be queued between the pipeline stages.
+	 */
+	public TilingSweep(int tilingOrder, int numWorkers, int queueCapacity) {
+		if (numWorkers <= 0) {
+			throw new IllegalArgumentException("Number of workers must be positive");
+		}
+		if (queueCapacity <= 0) {
+			throw new IllegalArgumentException("Queue capacity must be positive");
+		}
+		this.tilingOrder = tilingOrder;
+		this.numWorkers = numWorkers;
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * Makes the workers look up each polyform's solution count in a cache before solving it, and store it there
+	 * afterwards. Polyforms are looked up in their normalized form, so all rotations and reflections share one result.
+	 *
+	 * @param resultCache The cache to use, or null to turn caching off
+	 */
+	public void setResultCache(ResultCache resultCache) {
+		this.resultCache = resultCache;
+	}
+
+	/**
+	 * Receives the result for each polyform as soon as it has been solved. Called from the thread running the sweep.
+	 */
+	public interface ResultListener {
+		void onResult(Polyform polyform, int solutionCount);
+	}
+
+	/**
+	 * Running totals of a sweep.
+	 */
+	public static class Tally {
+		private long numTested;
+		private long numTiling;
+
+		public long getNumTested() {
+			return numTested;
+		}
+
+		public long getNumTiling() {
+			return numTiling;
+		}
+
+		public long getNumNonTiling() {
+			return numTested - numTiling;
+		}
+	}
+
+	/**
+	 * Solves all given polyforms, in no particular order, and returns once all of them have been solved.
+	 *
+	 * @param polyforms The polyforms to solve. Only ever accessed from a single producer thread.
+	 * @param listener Receives each result, may be null.
+	 * @return The totals over all polyforms
+	 */
+	public Tally run(Iterator<Polyform> polyforms, ResultListener listener) throws InterruptedException {
+		BlockingQueue<Polyform> work = new ArrayBlockingQueue<>(queueCapacity);
+		BlockingQueue<Result> results = new ArrayBlockingQueue<>(queueCapacity);
+		Thread[] threads = new Thread[numWorkers + 1];
+		threads[0] = new Thread(() -> produce(polyforms, work, results), "TilingSweep-producer");
+		for (int i = 1; i <= numWorkers; ++i) {
+			threads[i] = new Thread(() -> solve(work, results), "TilingSweep-worker-" + i);
+		}
+		for (Thread thread : threads) {
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		Tally tally = new Tally();
+		try {
+			int finishedWorkers = 0;
+			while (finishedWorkers < numWorkers) {
+				Result result = results.take();
+				if (result.error != null) {
+					throw new IllegalStateException("Tiling sweep failed", result.error);
+				}
+				if (result.polyform == null) {
+					++finishedWorkers;
+					continue;
+				}
+				++tally.numTested;
+				if (result.solutionCount > 0) {
+					++tally.numTiling;
+				}
+				if (listener != null) {
+					listener.onResult(result.polyform, result.solutionCount);
+				}
+			}
+		} finally {
+			// Releases the producer and workers still waiting on the queues if the sweep ends early
+			for (Thread thread : threads) {
+				thread.interrupt();
+			}
+		}
+		return tally;
+	}
+
+	private void produce(Iterator<Polyform> polyforms, BlockingQueue<Polyform> work, BlockingQueue<Result> results) {
+		try {
+			try {
+				while (polyforms.hasNext()) {
+					work.put(polyforms.next());
+				}
+			} catch (InterruptedException e) {
+				throw e;
+			} catch (Throwable e) {
+				// Errors are posted too, since the collecting thread waits for a message from every stage
+				results.put(new Result(null, 0, e));
+			}
+			for (int i = 0; i < numWorkers; ++i) {
+				work.put(END_OF_WORK);
+			}
+		} catch (InterruptedException ignored) {
+		}
+	}
+
+	private void solve(BlockingQueue<Polyform> work, BlockingQueue<Result> results) {
+		IsohedralTilingSolver solver = new IsohedralTilingSolver(tilingOrder, false);
+		try {
+			try {
+				for (Polyform polyform = work.take(); polyform != END_OF_WORK; polyform = work.take()) {
+					byte[] key = resultCache == null ? null : cacheKey(polyform);
+					ResultCache.Entry cached = key == null ? null : resultCache.get(key);
+					if (cached != null) {
+						results.put(new Result(polyform, (int) Math.min(cached.getSolutionCount(), Integer.MAX_VALUE), null));
+						continue;
+					}
+					solver.clear();
+					solver.addPolyhedron(polyform.getVertexOrders());
+					solver.solve();
+					if (key != null) {
+						long count = solver.getSolutionCountLong();
+						resultCache.put(key, new ResultCache.Entry(count, count > 0, solver.getStepCountLong(), null));
+					}
+					results.put(new Result(polyform, solver.getSolutionCount(), null));
+				}
+				results.put(new Result(null, 0, null));
+			} catch (InterruptedException e) {
+				throw e;
+			} catch (Throwable e) {
+				results.put(new Result(null, 0, e));
+			}
+		} catch (InterruptedException ignored) {
+		}
+	}
+
+	private byte[] cacheKey(Polyform polyform) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeUTF(IsohedralTilingSolver.class.getName());
+			out.writeInt(tilingOrder);
+			for (int vertexOrder : polyform.normalize().getVertexOrders()) {
+				out.writeInt(vertexOrder);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	// Marks the end of the work queue, once for every worker
+	private static final Polyform END_OF_WORK = new Polyform(new int[]{0, 0});
+
+	private static class Result {
+		// Null for the message of a worker that has finished
+		final Polyform polyform;
+		final int solutionCount;
+		final Throwable error;
+
+		Result(Polyform polyform, int solutionCount, Throwable error) {
+			this.polyform = polyform;
+			this.solutionCount = solutionCount;
+			this.error = error;
+		}
+	}
+}
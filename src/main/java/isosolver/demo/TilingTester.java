@@ -1,61 +1,73 @@
 package isosolver.demo;
 
-import isosolver.IsohedralTilingSolver;
 import isosolver.Polyform;
+import isosolver2.ResultCache;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
 public class TilingTester {
-	public static void main(String[] args) {
+	public static void main(String[] args) throws InterruptedException, IOException {
 		int NUM_POLYGON_SIDES = 3;
 		int NUM_POLYGON_TILES = 9;
 		int TILING_ORDER = 7;
+		int NUM_WORKERS = Runtime.getRuntime().availableProcessors();
+		int QUEUE_CAPACITY = 1024;
+		int MAX_LISTED = 20;
+		// Results of earlier runs are kept in the directory given as the first argument, if any
+		Path CACHE_DIRECTORY = args.length > 0 ? Paths.get(args[0]) : null;
+		long CACHE_MAX_BYTES = 256L << 20;
 
 		long startNanos = System.nanoTime();
-		List<Polyform> polyformList = Polyform.getAllPolyforms(NUM_POLYGON_SIDES, NUM_POLYGON_TILES);
 		System.out.println(String.format(Locale.ROOT,
-				"Testing all %d abstract %s",
-				polyformList.size(),
+				"Testing all abstract %s",
 				Polyform.getPolyformName(NUM_POLYGON_SIDES, NUM_POLYGON_TILES, true)
 		));
 
 		Map<Polyform, Integer> solutionCounts = new HashMap<>();
 		List<Polyform> solvingPolyforms = new ArrayList<>();
 		List<Polyform> nonSolvingPolyforms = new ArrayList<>();
-		for (Polyform p : polyformList) {
-			//System.out.println("Searching order-" + TILING_ORDER + " regular tilings using " + p + ":");
-			IsohedralTilingSolver solver = new IsohedralTilingSolver(TILING_ORDER, false);
-			solver.addPolyhedron(p.getVertexOrders());
-			solver.solve();
-			//System.out.println("Found " + solver.getSolutionCount() + " solutions");
-			int count = solver.getSolutionCount();
-			if (count > 0) {
-				solvingPolyforms.add(p);
-			} else {
-				nonSolvingPolyforms.add(p);
+		TilingSweep sweep = new TilingSweep(TILING_ORDER, NUM_WORKERS, QUEUE_CAPACITY);
+		ResultCache cache = CACHE_DIRECTORY == null ? null : new ResultCache(CACHE_DIRECTORY, CACHE_MAX_BYTES);
+		sweep.setResultCache(cache);
+		TilingSweep.Tally tally = sweep.run(Polyform.getPolyformIterator(NUM_POLYGON_SIDES, NUM_POLYGON_TILES), (p, count) -> {
+			//System.out.println("Found " + count + " order-" + TILING_ORDER + " regular tilings using " + p);
+			// Only keep as many polyforms as we might list below
+			List<Polyform> list = count > 0 ? solvingPolyforms : nonSolvingPolyforms;
+			if (list.size() < MAX_LISTED) {
+				list.add(p);
+				solutionCounts.put(p, count);
 			}
-			solutionCounts.put(p, count);
-		}
+		});
 		long endNanos = System.nanoTime();
+		System.out.println("Tested " + tally.getNumTested() + " polyforms");
 		System.out.println("Time to test: " + ((endNanos - startNanos) / 1_000_000L) + " ms");
+		if (cache != null) {
+			System.out.println("Cached results used: " + cache.getNumHits());
+		}
 		System.out.println(String.format(Locale.ROOT,
 				"Found %d %s tiling {%d,%d}",
-				solvingPolyforms.size(),
-				Polyform.getPolyformName(NUM_POLYGON_SIDES, NUM_POLYGON_TILES, solvingPolyforms.size() != 1),
+				tally.getNumTiling(),
+				Polyform.getPolyformName(NUM_POLYGON_SIDES, NUM_POLYGON_TILES, tally.getNumTiling() != 1),
 				NUM_POLYGON_SIDES, TILING_ORDER
 		));
-		if (solvingPolyforms.size() > 0 && solvingPolyforms.size() < 20) {
+		if (tally.getNumTiling() > 0 && tally.getNumTiling() < MAX_LISTED) {
 			System.out.println("Tiling polyforms:");
+			Collections.sort(solvingPolyforms);
 			for (Polyform p : solvingPolyforms) {
 				System.out.println(p + " (" + solutionCounts.get(p) + ")");
 			}
 		}
-		if (nonSolvingPolyforms.size() > 0 && nonSolvingPolyforms.size() < 20) {
+		if (tally.getNumNonTiling() > 0 && tally.getNumNonTiling() < MAX_LISTED) {
 			System.out.println("Non-tiling polyforms:");
+			Collections.sort(nonSolvingPolyforms);
 			for (Polyform p : nonSolvingPolyforms) {
 				System.out.println(p + " (" + solutionCounts.get(p) + ")");
 			}
@@ -1,290 +1,2020 @@
 package isosolver2;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 public class IsohedralTilingSolver2 {
 	private static final boolean DEBUG = false;
 
-	// Data passed in constructor
-	private final IsohedralTilingSolver2Data data;
+	// Kinds of gluings, see applyGluing
+	private static final int GLUING_NONE = 0;
+	private static final int GLUING_SELF_MIRRORED_SELF = 1;
+	private static final int GLUING_SELF = 2;
+	private static final int GLUING_PAIR = 3;
+	private static final int GLUING_GENERAL = 4;
+	// Number of edges glued by each kind of gluing
+	private static final int[] GLUED_EDGE_COUNTS = {0, 1, 2, 2, 4};
+
+	// Splitting the first 4 levels gives thousands of tasks for cycles of 12 to 16 edges (about 1600, 3000 and 23000),
+	// enough for work stealing to even out very unequal subtrees on 32 threads, while copying the search state for each
+	// task stays negligible next to the search below it. Inputs with little branching may call for a deeper split, see
+	// setParallelSplitDepth
+	private static final int DEFAULT_PARALLEL_SPLIT_DEPTH = 4;
+
+	// Layout of a frame on the decision stack of the iterative engine
+	private static final int FRAME_FIRST_EDGE = 0;
+	private static final int FRAME_SECOND_EDGE = 1;
+	private static final int FRAME_GLUING_KIND = 2;
+	private static final int FRAME_SIZE = 3;
+
+	// Checkpoint file format: magic, version, data fingerprint, finished flag, numSolutions, numSteps, numFrames, frames
+	private static final int CHECKPOINT_MAGIC = 0x49534350;
+	private static final int CHECKPOINT_VERSION = 1;
+
+	// Subtrees with fewer open edges than this are counted directly, since looking them up costs about as much
+	private static final int MIN_MEMO_EDGES = 8;
+
+	// How often to look at the clock when checkpointing by time
+	private static final long CHECKPOINT_CLOCK_CHECK_STEPS = 1L << 20;
+
+	// Data passed in constructor or to reset
+	private IsohedralTilingSolver2Data data;
 	// Copies of data entries, to modify as necessary
-	private final int numEdges;
-	private final int desiredVertexWeight;
-	private final int[] edgeRightNeighbors, edgeLeftNeighbors, edgeMirrors;
-	private final int[] leftVertexWeights;
-	private final int[] edgeTypes, matchTypes;
-	private final boolean conePointsAllowed, ensureConnectivity;
+	private int numEdges;
+	private int desiredVertexWeight;
+	private int[] edgeRightNeighbors, edgeLeftNeighbors, edgeMirrors;
+	private int[] leftVertexWeights;
+	private int[] edgeTypes, matchTypes;
+	private boolean conePointsAllowed, ensureConnectivity;
+
+	/**
+	 * iterPrevious[i] = Previous edge after i to iterate over (index numEdges is a sentinel)
+	 */
+	private int[] iterPrevious;
+
+	/**
+	 * iterNext[i] = Next edge after i to iterate over (index numEdges is a sentinel)
+	 */
+	private int[] iterNext;
+
+	/**
+	 * candidateList[i] = Sentinel of the candidate list containing edge i, which holds all edges with the same match type
+	 */
+	private int[] candidateList;
+
+	/**
+	 * matchingCandidateList[i] = Sentinel of the candidate list holding the edges that edge i can be glued to
+	 */
+	private int[] matchingCandidateList;
+
+	/**
+	 * candidatePrevious[i] = Previous edge in the candidate list of edge i
+	 * (indices from numEdges on are the sentinels of the candidate lists, the last one being an always empty list)
+	 */
+	private int[] candidatePrevious;
+
+	/**
+	 * candidateNext[i] = Next edge in the candidate list of edge i (same sentinels as candidatePrevious)
+	 */
+	private int[] candidateNext;
+
+	/**
+	 * Whether the candidate lists are kept apart from the iteration list; if all edges match each other, they are the same list
+	 */
+	private boolean separateCandidateLists;
+
+	/**
+	 * Index after the sentinel of the last candidate list
+	 */
+	private int candidateListsEnd;
+
+	/**
+	 * The arrays used as candidatePrevious and candidateNext when the candidate lists are kept apart
+	 */
+	private int[] separateCandidatePrevious, separateCandidateNext;
+
+	/**
+	 * Maps each match type to the sentinel of its candidate list, kept for reuse
+	 */
+	private final Map<Integer, Integer> candidateListsByMatchType = new HashMap<>();
+
+	/**
+	 * The number of edges the arrays have room for
+	 */
+	private int capacity;
+
+	/**
+	 * Scratch space for {@link #areTypesBalanced}, allocated on first use
+	 */
+	private long[] kindKeys;
+
+	/**
+	 * The rule by which the edge data has no solutions at all, or null if none applies, see {@link #findRootPruneRule}.
+	 * Since every gluing keeps the conditions checked, this is fixed for the whole search.
+	 */
+	private PruneRule rootPruneRule;
+
+	/**
+	 * cycleMarks[i] = cycleMark if edge i has been visited by the current call of {@link #countOpenCycles}
+	 */
+	private int[] cycleMarks;
+	private int cycleMark;
+
+	/**
+	 * activeSolution[i] = the index of the edge matched to edge i if currently matched, otherwise -1
+	 */
+	private int[] activeSolution;
+
+	/**
+	 * componentParent[i] = Parent of edge i in a union-find forest of the connected components of the current gluing,
+	 * where the edges of a component are connected by neighbors, mirrors and gluings (roots are their own parent)
+	 */
+	private int[] componentParent;
+
+	/**
+	 * componentSize[i] = Number of edges in the component with root i
+	 */
+	private int[] componentSize;
+
+	/**
+	 * componentFreeEdges[i] = Number of unglued edges in the component with root i
+	 */
+	private int[] componentFreeEdges;
+
+	/**
+	 * Undo information for each joinComponents call: the root, the root merged into it (or -1), and the number of edges glued
+	 */
+	private int[] componentJoinStack;
+	private int componentJoinStackSize;
+
+	/**
+	 * Decision stack of the iterative engine, one frame of FRAME_SIZE entries per level of the search: the edge branched on,
+	 * the edge currently glued to it (or the sentinel of its candidate list before the first candidate), and the kind of that gluing
+	 */
+	private int[] frames;
+	private int numFrames;
+
+	/**
+	 * List of all solutions found so far
+	 */
+	private final List<int[]> foundSolutions = new ArrayList<>();
+
+	/**
+	 * Solution count
+	 */
+	private long numSolutions;
+
+	/**
+	 * Whether to store found solutions
+	 */
+	private boolean storeSolutions;
+
+	/**
+	 * How many solutions to find at most
+	 */
+	private long maxSolutions;
+
+	/**
+	 * How many steps the current solve has taken
+	 */
+	private long numSteps;
+
+	/**
+	 * prunedNodes[r] = How many nodes the current solve has cut off by the prune rule with ordinal r
+	 */
+	private final long[] prunedNodes = new long[PruneRule.values().length];
+
+	/**
+	 * Whether to only search for solutions that are lexicographically minimal among their conjugates under the
+	 * symmetries of the edge data, see {@link IsohedralTilingSolver2Data#canonicalizeSolution}
+	 */
+	private boolean breakSymmetries;
+
+	/**
+	 * The nontrivial symmetries of the edge data and their inverses, generated on first use
+	 */
+	private int[][] symmetries, inverseSymmetries;
+
+	/**
+	 * How many levels of the search tree are split into separate tasks by the parallel solve methods
+	 */
+	private int parallelSplitDepth = DEFAULT_PARALLEL_SPLIT_DEPTH;
+
+	/**
+	 * Where countSolutions saves its search position, or null for no checkpoints
+	 */
+	private Path checkpointFile;
+
+	/**
+	 * Number of steps and nanoseconds between checkpoints (0 if not checkpointing by steps or by time, respectively)
+	 */
+	private long checkpointIntervalSteps, checkpointIntervalNanos;
+
+	/**
+	 * Step count at which the engine next considers writing a checkpoint (Long.MAX_VALUE if not checkpointing this solve)
+	 */
+	private long nextCheckpointStep = Long.MAX_VALUE;
+
+	/**
+	 * Step count and clock time of the last checkpoint, or of the start of the solve
+	 */
+	private long lastCheckpointStep, lastCheckpointNanos;
+
+	/**
+	 * Where countSolutions, hasSolution and findAllSolutions look up and store their results, or null for no caching
+	 */
+	private ResultCache resultCache;
+
+	/**
+	 * The key of the edge data in the result cache
+	 */
+	private byte[] resultCacheKey;
+
+	/**
+	 * Whether findAllSolutions stores the solutions themselves in the result cache
+	 */
+	private boolean cacheSolutions;
+
+	/**
+	 * The desired vertex weights when solving for several of them at once, or null when solving for desiredVertexWeight
+	 */
+	private int[] targetWeights;
+
+	/**
+	 * The weight open vertices may grow to: desiredVertexWeight, or the largest target weight still alive
+	 */
+	private int maxVertexWeight;
+
+	/**
+	 * Bit i is set if the current partial gluing may still be completed to a solution for target weight i
+	 */
+	private int aliveTargets;
+
+	/**
+	 * Bit i is set if more solutions are wanted for target weight i
+	 */
+	private int pendingTargets;
+
+	/**
+	 * For each frame, the alive targets of the configuration it branches from
+	 */
+	private int[] frameAliveTargets;
+
+	/**
+	 * The number of solutions and the first solution found for each target weight
+	 */
+	private long[] targetSolutionCounts;
+	private int[][] targetFirstSolutions;
+
+	/**
+	 * Number of entries in the memo table of countSolutions, or 0 to count without memoization
+	 */
+	private int memoTableSize;
+
+	/**
+	 * Memo table: canonical keys of open configurations with the number of solutions and steps of their subtrees.
+	 * Two entries per bucket, null while countSolutions is not memoizing. The key array of an entry is reused by the
+	 * entries replacing it and may be longer than the key, whose length is kept separately.
+	 */
+	private int[][] memoKeys;
+	private int[] memoKeyLengths;
+	private long[] memoSolutions, memoSteps;
+
+	/**
+	 * For each frame, the canonical key of the configuration it branches from in a buffer of its own that is reused by
+	 * later frames at the same depth, the length of that key (0 if its count is not to be stored), and the solution and
+	 * step counts when the frame was pushed
+	 */
+	private int[][] frameMemoKeys;
+	private int[] frameMemoKeyLengths;
+	private long[] frameMemoSolutions, frameMemoSteps;
+
+	/**
+	 * Scratch space for building canonical keys: the canonical position of each open edge, the first edge of each open
+	 * cycle, the canonical id of each component root, and the key being built
+	 */
+	private int[] memoPositions, memoCycleStarts, memoCycleLengths, memoComponentIds, memoComponentRoots, memoKeyBuffer;
+
+	/**
+	 * Number of subtrees counted by a lookup in the memo table during the last count
+	 */
+	private long numMemoHits;
+
+	public IsohedralTilingSolver2(IsohedralTilingSolver2Data data) {
+		allocate(data.getNumEdges());
+		reset(data);
+	}
+
+	/**
+	 * Creates a solver to be used for many edge data objects in turn, see {@link #reset}. It starts out with empty edge
+	 * data.
+	 *
+	 * @param capacity The number of edges to make room for. Data with more edges can still be solved, but makes the
+	 * solver grow first.
+	 */
+	public IsohedralTilingSolver2(int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("Capacity must be nonnegative");
+		}
+		allocate(capacity);
+		IsohedralTilingSolver2Data empty = new IsohedralTilingSolver2Data(0);
+		empty.setEdgeRightNeighbors(new int[0]);
+		empty.setEdgeLeftNeighbors(new int[0]);
+		empty.setEdgeMirrors(new int[0]);
+		empty.setLeftVertexWeights(new int[0]);
+		empty.setEdgeTypeSimple();
+		reset(empty);
+	}
+
+	/**
+	 * Switches the solver to other edge data, reusing its arrays, so that solving many small inputs in turn does not
+	 * allocate a new solver for each. Settings such as the result cache, memoization and checkpointing are kept; the
+	 * result cache key is taken from the new edge data. Results of earlier solves are discarded.
+	 * Must not be called while an iterator returned by {@link #solutionIterator()} is still in use on another thread.
+	 */
+	public void reset(IsohedralTilingSolver2Data data) {
+		data.validateUnlessTrusted();
+		if (data.numEdges > capacity) {
+			allocate(Math.max(data.numEdges, 2 * capacity));
+		}
+
+		this.data = data;
+		this.numEdges = data.numEdges;
+		this.desiredVertexWeight = data.desiredVertexWeight;
+		this.maxVertexWeight = desiredVertexWeight;
+		System.arraycopy(data.edgeMirrors, 0, edgeMirrors, 0, numEdges);
+		System.arraycopy(data.edgeTypes, 0, edgeTypes, 0, numEdges);
+		System.arraycopy(data.matchTypes, 0, matchTypes, 0, numEdges);
+		this.conePointsAllowed = data.conePointsAllowed;
+		this.ensureConnectivity = data.ensureConnectivity;
+
+		// One candidate list per distinct match type, plus an empty list for edge types nothing matches
+		Map<Integer, Integer> candidateLists = candidateListsByMatchType;
+		candidateLists.clear();
+		for (int i = 0; i < numEdges; ++i) {
+			Integer list = candidateLists.get(matchTypes[i]);
+			if (list == null) {
+				list = numEdges + candidateLists.size();
+				candidateLists.put(matchTypes[i], list);
+			}
+			candidateList[i] = list;
+		}
+		int emptyCandidateList = numEdges + candidateLists.size();
+		boolean allEdgesMatch = emptyCandidateList == numEdges + 1;
+		for (int i = 0; i < numEdges; ++i) {
+			matchingCandidateList[i] = candidateLists.getOrDefault(edgeTypes[i], emptyCandidateList);
+			allEdgesMatch &= matchingCandidateList[i] == numEdges;
+		}
+		this.separateCandidateLists = !allEdgesMatch;
+		this.candidateListsEnd = emptyCandidateList + 1;
+		this.candidatePrevious = separateCandidateLists ? separateCandidatePrevious : iterPrevious;
+		this.candidateNext = separateCandidateLists ? separateCandidateNext : iterNext;
+
+		this.symmetries = null;
+		this.inverseSymmetries = null;
+		this.resultCacheKey = resultCache == null ? null : ResultCache.key(data);
+		foundSolutions.clear();
+		numSolutions = 0;
+		numSteps = 0;
+		numFrames = 0;
+		resetState();
+		// Checks the starting configuration, so it comes after resetState
+		this.rootPruneRule = findRootPruneRule();
+	}
+
+	/**
+	 * Replaces all arrays by empty ones with room for the given number of edges.
+	 */
+	private void allocate(int capacity) {
+		this.capacity = capacity;
+		this.edgeRightNeighbors = new int[capacity];
+		this.edgeLeftNeighbors = new int[capacity];
+		this.edgeMirrors = new int[capacity];
+		this.leftVertexWeights = new int[capacity];
+		this.edgeTypes = new int[capacity];
+		this.matchTypes = new int[capacity];
+		this.iterPrevious = new int[capacity + 1];
+		this.iterNext = new int[capacity + 1];
+		this.candidateList = new int[capacity];
+		this.matchingCandidateList = new int[capacity];
+		// Room for the sentinels of up to one list per edge, plus the empty list
+		this.separateCandidatePrevious = new int[2 * capacity + 1];
+		this.separateCandidateNext = new int[2 * capacity + 1];
+		this.cycleMarks = new int[capacity];
+		this.cycleMark = 0;
+		this.activeSolution = new int[capacity];
+		this.componentParent = new int[capacity];
+		this.componentSize = new int[capacity];
+		this.componentFreeEdges = new int[capacity];
+		this.componentJoinStack = new int[3 * capacity];
+		// Every level glues at least one edge
+		this.frames = new int[FRAME_SIZE * capacity];
+	}
+
+	/**
+	 * @return The number of edges the solver has room for without growing
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Copies the complete search state of another solver, so that both can continue searching independently.
+	 */
+	private IsohedralTilingSolver2(IsohedralTilingSolver2 other) {
+		this.data = other.data;
+		this.numEdges = other.numEdges;
+		this.desiredVertexWeight = other.desiredVertexWeight;
+		this.maxVertexWeight = desiredVertexWeight;
+		this.edgeRightNeighbors = Arrays.copyOf(other.edgeRightNeighbors, other.edgeRightNeighbors.length);
+		this.edgeLeftNeighbors = Arrays.copyOf(other.edgeLeftNeighbors, other.edgeLeftNeighbors.length);
+		// Copied as well, since reset overwrites them in place
+		this.edgeMirrors = Arrays.copyOf(other.edgeMirrors, other.edgeMirrors.length);
+		this.leftVertexWeights = Arrays.copyOf(other.leftVertexWeights, other.leftVertexWeights.length);
+		this.edgeTypes = Arrays.copyOf(other.edgeTypes, other.edgeTypes.length);
+		this.matchTypes = Arrays.copyOf(other.matchTypes, other.matchTypes.length);
+		this.conePointsAllowed = other.conePointsAllowed;
+		this.ensureConnectivity = other.ensureConnectivity;
+		this.iterPrevious = Arrays.copyOf(other.iterPrevious, other.iterPrevious.length);
+		this.iterNext = Arrays.copyOf(other.iterNext, other.iterNext.length);
+		this.candidateList = Arrays.copyOf(other.candidateList, other.candidateList.length);
+		this.matchingCandidateList = Arrays.copyOf(other.matchingCandidateList, other.matchingCandidateList.length);
+		this.separateCandidateLists = other.separateCandidateLists;
+		this.candidateListsEnd = other.candidateListsEnd;
+		this.rootPruneRule = other.rootPruneRule;
+		this.capacity = other.capacity;
+		this.cycleMarks = new int[other.cycleMarks.length];
+		this.separateCandidatePrevious = Arrays.copyOf(other.separateCandidatePrevious, other.separateCandidatePrevious.length);
+		this.separateCandidateNext = Arrays.copyOf(other.separateCandidateNext, other.separateCandidateNext.length);
+		this.candidatePrevious = separateCandidateLists ? separateCandidatePrevious : iterPrevious;
+		this.candidateNext = separateCandidateLists ? separateCandidateNext : iterNext;
+		this.activeSolution = Arrays.copyOf(other.activeSolution, other.activeSolution.length);
+		this.componentParent = Arrays.copyOf(other.componentParent, other.componentParent.length);
+		this.componentSize = Arrays.copyOf(other.componentSize, other.componentSize.length);
+		this.componentFreeEdges = Arrays.copyOf(other.componentFreeEdges, other.componentFreeEdges.length);
+		this.componentJoinStack = Arrays.copyOf(other.componentJoinStack, other.componentJoinStack.length);
+		this.componentJoinStackSize = other.componentJoinStackSize;
+		this.frames = Arrays.copyOf(other.frames, other.frames.length);
+		this.numFrames = other.numFrames;
+		this.storeSolutions = other.storeSolutions;
+		this.maxSolutions = Long.MAX_VALUE;
+	}
+
+	/**
+	 * Restores the unglued starting configuration, also after a solve has been aborted halfway.
+	 */
+	private void resetState() {
+		System.arraycopy(data.edgeRightNeighbors, 0, edgeRightNeighbors, 0, numEdges);
+		System.arraycopy(data.edgeLeftNeighbors, 0, edgeLeftNeighbors, 0, numEdges);
+		System.arraycopy(data.leftVertexWeights, 0, leftVertexWeights, 0, numEdges);
+		for (int i = 0; i < numEdges; ++i) {
+			iterPrevious[i + 1] = i;
+			iterNext[i] = i + 1;
+		}
+		iterPrevious[0] = numEdges;
+		iterNext[numEdges] = 0;
+		if (separateCandidateLists) {
+			for (int list = numEdges; list < candidateListsEnd; ++list) {
+				candidatePrevious[list] = list;
+				candidateNext[list] = list;
+			}
+			for (int i = 0; i < numEdges; ++i) {
+				int list = candidateList[i];
+				candidatePrevious[i] = candidatePrevious[list];
+				candidateNext[i] = list;
+				candidateNext[candidatePrevious[list]] = i;
+				candidatePrevious[list] = i;
+			}
+		}
+		Arrays.fill(activeSolution, -1);
+		if (ensureConnectivity) {
+			for (int i = 0; i < numEdges; ++i) {
+				componentParent[i] = i;
+				componentSize[i] = 1;
+				componentFreeEdges[i] = 1;
+			}
+			for (int i = 0; i < numEdges; ++i) {
+				unionComponents(i, edgeRightNeighbors[i]);
+				unionComponents(i, edgeMirrors[i]);
+			}
+			componentJoinStackSize = 0;
+		}
+		Arrays.fill(prunedNodes, 0);
+	}
+
+	/**
+	 * Finds a gluing with the given edge data.
+	 *
+	 * @return A list representing a gluing, or null if no valid gluing exists.
+	 */
+	public int[] findFirstSolution() {
+		solve(true, 1L);
+		return foundSolutions.isEmpty() ? null : foundSolutions.get(0);
+	}
+
+	/**
+	 * Finds all possible gluings with the given edge data.
+	 *
+	 * @return A list of solutions, where a solution consists of an array of gluings.
+	 */
+	public List<int[]> findAllSolutions() {
+		ResultCache.Entry cached = resultCache == null ? null : resultCache.get(resultCacheKey);
+		if (cached != null && cached.getSolutions() != null) {
+			foundSolutions.clear();
+			for (int[] solution : cached.getSolutions()) {
+				foundSolutions.add(solution);
+			}
+			numSolutions = cached.getSolutionCount();
+			numSteps = cached.getStepsTaken();
+			Arrays.fill(prunedNodes, 0);
+			return foundSolutions;
+		}
+		solve(true, Long.MAX_VALUE);
+		if (resultCache != null) {
+			PackedSolutionStore solutions = null;
+			if (cacheSolutions) {
+				solutions = new PackedSolutionStore(numEdges);
+				for (int[] solution : foundSolutions) {
+					solutions.add(solution);
+				}
+			}
+			resultCache.put(resultCacheKey, new ResultCache.Entry(numSolutions, numSolutions > 0, numSteps, solutions));
+		}
+		return foundSolutions;
+	}
+
+	/**
+	 * Returns the number of gluings with the given edge data.
+	 *
+	 * @return The number of gluings
+	 */
+	public long countSolutions() {
+		ResultCache.Entry cached = resultCache == null ? null : resultCache.get(resultCacheKey);
+		if (cached != null && cached.getSolutionCount() >= 0) {
+			numSolutions = cached.getSolutionCount();
+			numSteps = cached.getStepsTaken();
+			Arrays.fill(prunedNodes, 0);
+			return numSolutions;
+		}
+		resetState();
+		numSolutions = 0;
+		numSteps = 0;
+		numFrames = 0;
+		countCheckpointed();
+		if (resultCache != null) {
+			resultCache.put(resultCacheKey, new ResultCache.Entry(numSolutions, numSolutions > 0, numSteps, null));
+		}
+		return numSolutions;
+	}
+
+	/**
+	 * Continues a count from a checkpoint written by {@link #countSolutions()} (or by an earlier resume), and returns the
+	 * same total an uninterrupted count would have returned. {@link #getStepsTaken()} also includes the steps taken before
+	 * the checkpoint. If checkpointing is enabled, the resumed count keeps writing checkpoints.
+	 *
+	 * @param checkpointFile A checkpoint written by a solver for the same edge data
+	 * @return The number of gluings
+	 */
+	public long resumeCountSolutions(Path checkpointFile) throws IOException {
+		resetState();
+		boolean finished;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(checkpointFile)))) {
+			if (in.readInt() != CHECKPOINT_MAGIC || in.readInt() != CHECKPOINT_VERSION) {
+				throw new IOException("Not a checkpoint file: " + checkpointFile);
+			}
+			if (in.readLong() != data.fingerprint()) {
+				throw new IllegalArgumentException("Checkpoint " + checkpointFile + " belongs to different edge data");
+			}
+			finished = in.readBoolean();
+			numSolutions = in.readLong();
+			numSteps = in.readLong();
+			numFrames = in.readInt();
+			if (numFrames < 0 || numFrames > numEdges) {
+				throw new IOException("Corrupt checkpoint file: " + checkpointFile);
+			}
+			for (int i = 0; i < FRAME_SIZE * numFrames; ++i) {
+				frames[i] = in.readInt();
+			}
+		}
+		// Redo the gluings on the decision stack, which brings back the exact search state at the checkpoint
+		for (int level = 0; level < numFrames; ++level) {
+			int frame = FRAME_SIZE * level;
+			int firstEdge = frames[frame + FRAME_FIRST_EDGE];
+			int secondEdge = frames[frame + FRAME_SECOND_EDGE];
+			if (firstEdge < 0 || firstEdge >= numEdges || secondEdge < 0 || secondEdge >= numEdges
+					|| iterNext[numEdges] == numEdges || selectFirstEdge() != firstEdge || activeSolution[secondEdge] != -1
+					|| edgeTypes[firstEdge] != matchTypes[secondEdge]
+					|| applyGluing(firstEdge, secondEdge) != frames[frame + FRAME_GLUING_KIND]) {
+				throw new IOException("Corrupt checkpoint file: " + checkpointFile);
+			}
+		}
+		if (!finished) {
+			countCheckpointed();
+		}
+		return numSolutions;
+	}
+
+	/**
+	 * Makes {@link #countSolutions()} save its position to a file at regular intervals, so that a count that gets
+	 * interrupted can be continued with {@link #resumeCountSolutions}. A checkpoint is written whenever either interval
+	 * has passed, and once more when the count is finished. Each checkpoint replaces the previous one atomically.
+	 *
+	 * @param checkpointFile Where to save the position, or null to turn checkpointing off
+	 * @param intervalSteps Number of search steps between checkpoints, or 0 to checkpoint by time only
+	 * @param intervalSeconds Number of seconds between checkpoints, or 0 to checkpoint by steps only
+	 */
+	public void setCheckpointing(Path checkpointFile, long intervalSteps, long intervalSeconds) {
+		if (intervalSteps < 0 || intervalSeconds < 0) {
+			throw new IllegalArgumentException("Checkpoint intervals must be nonnegative");
+		}
+		if (checkpointFile != null && intervalSteps == 0 && intervalSeconds == 0) {
+			throw new IllegalArgumentException("At least one checkpoint interval must be positive");
+		}
+		this.checkpointFile = checkpointFile;
+		this.checkpointIntervalSteps = intervalSteps;
+		this.checkpointIntervalNanos = TimeUnit.SECONDS.toNanos(intervalSeconds);
+	}
+
+	/**
+	 * Makes {@link #countSolutions()}, {@link #hasSolution()} and {@link #findAllSolutions()} look up their result in a
+	 * cache before solving, and store it there afterwards. After a result has been taken from the cache,
+	 * {@link #getStepsTaken()} returns the number of steps of the solve that produced it.
+	 * The cache key is taken from the edge data when this method is called.
+	 *
+	 * @param resultCache The cache to use, or null to turn caching off
+	 * @param cacheSolutions Whether findAllSolutions should store the solutions themselves, and not just their number
+	 */
+	public void setResultCache(ResultCache resultCache, boolean cacheSolutions) {
+		this.resultCache = resultCache;
+		this.resultCacheKey = resultCache == null ? null : ResultCache.key(data);
+		this.cacheSolutions = cacheSolutions;
+	}
+
+	/**
+	 * Makes {@link #countSolutions()} remember the number of solutions below each configuration of open edges it has
+	 * counted, and reuse that number when the same configuration turns up again in another branch. Configurations are
+	 * compared up to relabeling: two are the same if their open edge cycles have the same vertex weights, edge types
+	 * and match types in the same order, with the same mirrors and components. The memo table has a fixed size; when
+	 * both entries of a bucket are taken, the one with the smaller subtree is replaced.
+	 * Memoization reduces the number of steps taken, but not the count.
+	 *
+	 * @param tableSize Number of entries in the memo table, rounded up to a power of two, or 0 to turn memoization off
+	 */
+	public void setMemoization(int tableSize) {
+		if (tableSize < 0 || tableSize > 1 << 30) {
+			throw new IllegalArgumentException("Memo table size must be between 0 and 2^30");
+		}
+		this.memoTableSize = tableSize == 0 ? 0 : Math.max(2, Integer.highestOneBit(tableSize - 1) << 1);
+	}
+
+	/**
+	 * @return The number of subtrees the last count took from the memo table instead of searching them
+	 */
+	public long getMemoHits() {
+		return numMemoHits;
+	}
+
+	private void countCheckpointed() {
+		foundSolutions.clear();
+		storeSolutions = false;
+		maxSolutions = Long.MAX_VALUE;
+		numMemoHits = 0;
+		if (memoTableSize > 0) {
+			// Frames restored from a checkpoint have no memo key, their counts are just not stored
+			memoKeys = new int[memoTableSize][];
+			memoKeyLengths = new int[memoTableSize];
+			memoSolutions = new long[memoTableSize];
+			memoSteps = new long[memoTableSize];
+			frameMemoKeys = new int[numEdges][];
+			frameMemoKeyLengths = new int[numEdges];
+			frameMemoSolutions = new long[numEdges];
+			frameMemoSteps = new long[numEdges];
+			memoPositions = new int[numEdges];
+			memoCycleStarts = new int[numEdges];
+			memoCycleLengths = new int[numEdges];
+			memoComponentIds = new int[numEdges];
+			memoComponentRoots = new int[numEdges];
+			Arrays.fill(memoComponentIds, -1);
+			memoKeyBuffer = new int[2 + 6 * numEdges];
+		}
+		if (checkpointFile != null) {
+			lastCheckpointStep = numSteps;
+			lastCheckpointNanos = System.nanoTime();
+			scheduleCheckpoint();
+		}
+		try {
+			runIterative(true, false);
+		} finally {
+			nextCheckpointStep = Long.MAX_VALUE;
+			memoKeys = null;
+			memoKeyLengths = null;
+			frameMemoKeys = null;
+			frameMemoKeyLengths = null;
+		}
+		if (checkpointFile != null) {
+			writeCheckpoint(true);
+		}
+	}
+
+	/**
+	 * Checks whether there is any valid gluing with the given edge data.
+	 *
+	 * @return True if a gluing exists
+	 */
+	public boolean hasSolution() {
+		ResultCache.Entry cached = resultCache == null ? null : resultCache.get(resultCacheKey);
+		if (cached != null) {
+			numSolutions = cached.hasSolution() ? 1 : 0;
+			numSteps = cached.getStepsTaken();
+			Arrays.fill(prunedNodes, 0);
+			return cached.hasSolution();
+		}
+		solve(false, 1L);
+		if (resultCache != null) {
+			resultCache.put(resultCacheKey, new ResultCache.Entry(-1, numSolutions > 0, numSteps, null));
+		}
+		return numSolutions > 0;
+	}
+
+	/**
+	 * Passes each gluing with the given edge data to a consumer as soon as it is found, in the same order as
+	 * {@link #findAllSolutions()}. The consumer gets a view of the solver's own state instead of a copy, so no memory is
+	 * spent per solution.
+	 *
+	 * @param consumer Receives the solutions, and may stop the search by returning false
+	 * @return The number of solutions passed to the consumer
+	 */
+	public long solve(SolutionConsumer consumer) {
+		resetState();
+		foundSolutions.clear();
+		numSolutions = 0;
+		numSteps = 0;
+		numFrames = 0;
+		storeSolutions = false;
+		maxSolutions = Long.MAX_VALUE;
+		SolutionView view = new SolutionView(activeSolution, numEdges);
+		boolean descend = true;
+		while (runIterative(descend, true) && consumer.accept(view)) {
+			descend = false;
+		}
+		return numSolutions;
+	}
+
+	/**
+	 * Returns the gluings with the given edge data one at a time, in the same order as {@link #findAllSolutions()}.
+	 * The search runs lazily: it stops after each solution and only continues when the next one is asked for, so taking
+	 * a few solutions or stopping early costs no more than the search up to that point.
+	 * The iterator searches on its own copy of the search state, so this solver remains free for other uses.
+	 *
+	 * @return An iterator over the solutions, where a solution consists of an array of gluings.
+	 */
+	public Iterator<int[]> solutionIterator() {
+		return new SolutionIterator(new IsohedralTilingSolver2(this));
+	}
+
+	/**
+	 * Returns the gluings with the given edge data as a sequential spliterator, which searches lazily like
+	 * {@link #solutionIterator()}. Use with {@link java.util.stream.StreamSupport#stream} to filter or limit solutions.
+	 *
+	 * @return A spliterator over the solutions, where a solution consists of an array of gluings.
+	 */
+	public Spliterator<int[]> solutionSpliterator() {
+		return Spliterators.spliteratorUnknownSize(solutionIterator(), Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL);
+	}
+
+	/**
+	 * Finds one representative of each class of gluings that are equivalent under the symmetries of the edge data.
+	 * The result is the same as canonicalizing all solutions with {@link IsohedralTilingSolver2Data#canonicalizeSolutions},
+	 * but branches that cannot lead to a canonical solution are cut off during the search.
+	 *
+	 * @return A list of canonical solutions, where a solution consists of an array of gluings.
+	 */
+	public List<int[]> findCanonicalSolutions() {
+		solveCanonical(true);
+		return foundSolutions;
+	}
+
+	/**
+	 * Returns the number of classes of gluings that are equivalent under the symmetries of the edge data.
+	 *
+	 * @return The number of canonical gluings
+	 * @see #findCanonicalSolutions()
+	 */
+	public long countCanonicalSolutions() {
+		solveCanonical(false);
+		return numSolutions;
+	}
+
+	/**
+	 * Returns the number of gluings for each of several desired vertex weights, all found by a single search in place
+	 * of one search per weight. The desired vertex weight of the edge data is ignored. Each branch is searched as long
+	 * as it may still lead to a solution for any of the weights, so the search costs little more than the one for the
+	 * most expensive weight. {@link #getStepsTaken()} and the solution count cover the shared search.
+	 *
+	 * @param targetWeights The desired vertex weights, at most 32 of them
+	 * @return The number of gluings for each target weight, in the same order
+	 */
+	public long[] countSolutionsPerTarget(int[] targetWeights) {
+		solveTargets(targetWeights, false);
+		return targetSolutionCounts;
+	}
+
+	/**
+	 * Finds a gluing for each of several desired vertex weights with a single search, like
+	 * {@link #countSolutionsPerTarget}. Weights stop being searched for once they have a solution, and the search ends as
+	 * soon as all have one.
+	 *
+	 * @param targetWeights The desired vertex weights, at most 32 of them
+	 * @return The first gluing found for each target weight, in the same order, or null for weights without any
+	 */
+	public int[][] findFirstSolutionPerTarget(int[] targetWeights) {
+		solveTargets(targetWeights, true);
+		return targetFirstSolutions;
+	}
+
+	/**
+	 * Returns the number of iteration steps taken during the last solve.
+	 *
+	 * @return The number of steps.
+	 */
+	public long getStepsTaken() {
+		return numSteps;
+	}
+
+	/**
+	 * Returns how many nodes of the search tree the given rule cut off during the last solve, counting both rejected
+	 * gluings and visited nodes whose subtrees were not searched. Subtrees counted by the memo table and, after resuming,
+	 * the search before the checkpoint are not included.
+	 *
+	 * @return The number of nodes cut off
+	 */
+	public long getPrunedNodes(PruneRule rule) {
+		return prunedNodes[rule.ordinal()];
+	}
+
+	/**
+	 * Returns the number of gluings with the given edge data, searching in parallel on the given pool.
+	 * The result is identical to that of {@link #countSolutions()}.
+	 *
+	 * @param pool The pool to run the search tasks on
+	 * @return The number of gluings
+	 */
+	public long countSolutions(ForkJoinPool pool) {
+		solveParallel(pool, false, true);
+		return numSolutions;
+	}
+
+	/**
+	 * Finds all possible gluings with the given edge data, searching in parallel on the given pool.
+	 * The solutions are returned in the same order as by {@link #findAllSolutions()}.
+	 *
+	 * @param pool The pool to run the search tasks on
+	 * @return A list of solutions, where a solution consists of an array of gluings.
+	 */
+	public List<int[]> findAllSolutions(ForkJoinPool pool) {
+		return findAllSolutions(pool, true);
+	}
+
+	/**
+	 * Finds all possible gluings with the given edge data, searching in parallel on the given pool.
+	 *
+	 * @param pool The pool to run the search tasks on
+	 * @param preserveOrder Whether to return the solutions in the same order as {@link #findAllSolutions()}.
+	 *                      Otherwise, they are returned in whichever order the search tasks finish.
+	 * @return A list of solutions, where a solution consists of an array of gluings.
+	 */
+	public List<int[]> findAllSolutions(ForkJoinPool pool, boolean preserveOrder) {
+		solveParallel(pool, true, preserveOrder);
+		return foundSolutions;
+	}
+
+	/**
+	 * Finds all possible gluings with the given edge data, searching in parallel on a temporary pool.
+	 *
+	 * @param parallelism The number of threads to use
+	 * @return A list of solutions in the same order as by {@link #findAllSolutions()}.
+	 */
+	public List<int[]> findAllSolutions(int parallelism) {
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			return findAllSolutions(pool, true);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Solves each edge data object of a stream with one reusable solver per thread the stream runs on, see
+	 * {@link #reset}, instead of creating a solver for each. The stream may be parallel, and is run lazily.
+	 *
+	 * @param dataStream The edge data objects to solve
+	 * @param task Computes the result for each edge data object, from a solver that has just been reset to it
+	 * @return A stream of the results, in the order of dataStream
+	 */
+	public static <R> Stream<R> solveEach(Stream<IsohedralTilingSolver2Data> dataStream, Function<IsohedralTilingSolver2, R> task) {
+		return solveEach(dataStream, null, false, task);
+	}
+
+	/**
+	 * Solves each edge data object of a stream like {@link #solveEach(Stream, Function)}, with every solver using the
+	 * given result cache, see {@link #setResultCache}.
+	 *
+	 * @param dataStream The edge data objects to solve
+	 * @param resultCache The cache to use, or null to turn caching off
+	 * @param cacheSolutions Whether findAllSolutions should store the solutions themselves, and not just their number
+	 * @param task Computes the result for each edge data object, from a solver that has just been reset to it
+	 * @return A stream of the results, in the order of dataStream
+	 */
+	public static <R> Stream<R> solveEach(Stream<IsohedralTilingSolver2Data> dataStream, ResultCache resultCache, boolean cacheSolutions, Function<IsohedralTilingSolver2, R> task) {
+		ThreadLocal<IsohedralTilingSolver2> solvers = ThreadLocal.withInitial(() -> {
+			IsohedralTilingSolver2 solver = new IsohedralTilingSolver2(0);
+			// The cache key follows the edge data on every reset
+			solver.setResultCache(resultCache, cacheSolutions);
+			return solver;
+		});
+		return dataStream.map(data -> {
+			IsohedralTilingSolver2 solver = solvers.get();
+			solver.reset(data);
+			return task.apply(solver);
+		});
+	}
+
+	/**
+	 * Returns the number of gluings for each of the given edge data objects, solving them in parallel on the given pool
+	 * with one reusable solver per worker thread. Each object is solved by a single thread, so this suits many small
+	 * inputs, where {@link #countSolutions(ForkJoinPool)} suits a few large ones.
+	 *
+	 * @param dataList The edge data objects to solve
+	 * @param pool The pool to run the solvers on
+	 * @return The number of gluings for each edge data object, in the same order
+	 */
+	public static long[] countSolutionsBatch(List<IsohedralTilingSolver2Data> dataList, ForkJoinPool pool) {
+		return countSolutionsBatch(dataList, pool, null);
+	}
+
+	/**
+	 * Returns the number of gluings for each of the given edge data objects like
+	 * {@link #countSolutionsBatch(List, ForkJoinPool)}, taking each count from the given result cache if it is there,
+	 * and storing it there otherwise.
+	 *
+	 * @param dataList The edge data objects to solve
+	 * @param pool The pool to run the solvers on
+	 * @param resultCache The cache to use, or null to turn caching off
+	 * @return The number of gluings for each edge data object, in the same order
+	 */
+	public static long[] countSolutionsBatch(List<IsohedralTilingSolver2Data> dataList, ForkJoinPool pool, ResultCache resultCache) {
+		// A parallel stream runs on the pool of the task that runs it
+		return pool.submit(() -> solveEach(dataList.parallelStream(), resultCache, false, IsohedralTilingSolver2::countSolutions)
+				.mapToLong(Long::longValue)
+				.toArray()).join();
+	}
+
+	/**
+	 * Sets how many levels of the search tree the parallel solve methods split into separate tasks.
+	 * Deeper splits produce more and smaller tasks. Subtrees below this depth are searched sequentially.
+	 *
+	 * @param parallelSplitDepth The split depth (default: 4)
+	 */
+	public void setParallelSplitDepth(int parallelSplitDepth) {
+		if (parallelSplitDepth < 0) {
+			throw new IllegalArgumentException("Parallel split depth must be nonnegative");
+		}
+		this.parallelSplitDepth = parallelSplitDepth;
+	}
+
+	/**
+	 * Enumerates the search tree down to the given depth. Each returned prefix ID describes one node of the search
+	 * tree at that depth, or one shallower node that already is a complete gluing, as the sequence of gluings leading
+	 * to it. The subtrees below these prefixes partition the search, so they can be solved independently
+	 * with {@link #countPrefixSolutions} or {@link #findAllPrefixSolutions}, e.g. in separate processes.
+	 * For the same edge data, the returned list is always the same.
+	 *
+	 * @param depth The number of gluings in each prefix
+	 * @return The prefix IDs, in search order
+	 */
+	public List<String> enumeratePrefixes(int depth) {
+		if (depth < 0) {
+			throw new IllegalArgumentException("Prefix depth must be nonnegative");
+		}
+		resetState();
+		List<String> prefixIds = new ArrayList<>();
+		enumeratePrefixesStep(depth, new int[2 * depth], 0, prefixIds);
+		return prefixIds;
+	}
+
+	/**
+	 * Returns the number of gluings below the given prefix of the search tree.
+	 * Summing this over all prefixes from {@link #enumeratePrefixes} gives the result of {@link #countSolutions()}.
+	 *
+	 * @param prefixId A prefix ID returned by {@link #enumeratePrefixes}
+	 * @return The number of gluings
+	 */
+	public long countPrefixSolutions(String prefixId) {
+		solvePrefix(prefixId, false);
+		return numSolutions;
+	}
+
+	/**
+	 * Finds all gluings below the given prefix of the search tree.
+	 * Concatenating these over all prefixes from {@link #enumeratePrefixes} gives the result of {@link #findAllSolutions()}.
+	 *
+	 * @param prefixId A prefix ID returned by {@link #enumeratePrefixes}
+	 * @return A list of solutions, where a solution consists of an array of gluings.
+	 */
+	public List<int[]> findAllPrefixSolutions(String prefixId) {
+		solvePrefix(prefixId, true);
+		return foundSolutions;
+	}
+
+	/**
+	 * Passes each gluing below the given prefix of the search tree to a consumer as soon as it is found, like
+	 * {@link #solve(SolutionConsumer)}, in the same order as {@link #findAllPrefixSolutions}.
+	 *
+	 * @param prefixId A prefix ID returned by {@link #enumeratePrefixes}
+	 * @param consumer Receives the solutions, and may stop the search by returning false
+	 * @return The number of solutions passed to the consumer
+	 */
+	public long solvePrefix(String prefixId, SolutionConsumer consumer) {
+		applyPrefix(prefixId, false);
+		numFrames = 0;
+		SolutionView view = new SolutionView(activeSolution, numEdges);
+		boolean descend = true;
+		while (runIterative(descend, true) && consumer.accept(view)) {
+			descend = false;
+		}
+		return numSolutions;
+	}
+
+	private void enumeratePrefixesStep(int depth, int[] prefix, int prefixLength, List<String> prefixIds) {
+		if (prefixLength == 2 * depth || iterNext[numEdges] == numEdges) {
+			prefixIds.add(formatPrefixId(prefix, prefixLength));
+			return;
+		}
+		int firstEdge = selectFirstEdge();
+		if (firstEdge == -1) {
+			return;
+		}
+		int candidates = matchingCandidateList[firstEdge];
+		for (int secondEdge = candidateNext[candidates]; secondEdge != candidates; secondEdge = candidateNext[secondEdge]) {
+			int gluingKind = applyGluing(firstEdge, secondEdge);
+			if (gluingKind != GLUING_NONE) {
+				prefix[prefixLength] = firstEdge;
+				prefix[prefixLength + 1] = secondEdge;
+				enumeratePrefixesStep(depth, prefix, prefixLength + 2, prefixIds);
+				undoGluing(gluingKind, firstEdge, secondEdge);
+			}
+		}
+	}
+
+	private void solvePrefix(String prefixId, boolean storeSolutions) {
+		applyPrefix(prefixId, storeSolutions);
+		solveIterative();
+	}
+
+	/**
+	 * Resets the search and applies the gluings of the given prefix, ready to search below it.
+	 */
+	private void applyPrefix(String prefixId, boolean storeSolutions) {
+		int[] prefix = parsePrefixId(prefixId);
+		resetState();
+		foundSolutions.clear();
+		numSolutions = 0;
+		numSteps = 0;
+		this.storeSolutions = storeSolutions;
+		this.maxSolutions = Long.MAX_VALUE;
+		for (int i = 0; i < prefix.length; i += 2) {
+			int firstEdge = prefix[i];
+			int secondEdge = prefix[i + 1];
+			if (iterNext[numEdges] == numEdges || selectFirstEdge() != firstEdge) {
+				throw new IllegalArgumentException("Prefix " + prefixId + " does not follow the search order");
+			}
+			if (activeSolution[secondEdge] != -1 || edgeTypes[firstEdge] != matchTypes[secondEdge]
+					|| applyGluing(firstEdge, secondEdge) == GLUING_NONE) {
+				throw new IllegalArgumentException("Prefix " + prefixId + " contains an invalid gluing of " + firstEdge + " to " + secondEdge);
+			}
+		}
+	}
+
+	private static String formatPrefixId(int[] prefix, int prefixLength) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < prefixLength; i += 2) {
+			if (i != 0) sb.append(',');
+			sb.append(prefix[i]).append(':').append(prefix[i + 1]);
+		}
+		return sb.toString();
+	}
+
+	private int[] parsePrefixId(String prefixId) {
+		if (prefixId.isEmpty()) {
+			return new int[0];
+		}
+		String[] gluings = prefixId.split(",");
+		int[] prefix = new int[2 * gluings.length];
+		for (int i = 0; i < gluings.length; ++i) {
+			String[] edges = gluings[i].split(":");
+			if (edges.length != 2) {
+				throw new IllegalArgumentException("Malformed prefix ID: " + prefixId);
+			}
+			try {
+				prefix[2 * i] = Integer.parseInt(edges[0]);
+				prefix[2 * i + 1] = Integer.parseInt(edges[1]);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Malformed prefix ID: " + prefixId, e);
+			}
+			if (prefix[2 * i] < 0 || prefix[2 * i] >= numEdges || prefix[2 * i + 1] < 0 || prefix[2 * i + 1] >= numEdges) {
+				throw new IllegalArgumentException("Prefix ID " + prefixId + " refers to nonexistent edges");
+			}
+		}
+		return prefix;
+	}
+
+	private void solveTargets(int[] targetWeights, boolean firstSolutionsOnly) {
+		if (targetWeights.length == 0 || targetWeights.length > Integer.SIZE) {
+			throw new IllegalArgumentException("Number of target weights must be between 1 and " + Integer.SIZE);
+		}
+		for (int targetWeight : targetWeights) {
+			if (targetWeight < 0) {
+				throw new IllegalArgumentException("Target weights must be nonnegative");
+			}
+		}
+		// Without cone points, each target weight is subject to its own root checks. Vertex weights are positive, so a
+		// target weight of 0 only has the empty gluing, and leaving it out keeps the weight checks simple.
+		resetState();
+		int initialTargets = 0;
+		if (rootPruneRule != PruneRule.EDGE_TYPES) {
+			for (int target = 0; target < targetWeights.length; ++target) {
+				int targetWeight = targetWeights[target];
+				if (targetWeight == 0 ? numEdges == 0 : conePointsAllowed || isVertexCountConsistent(targetWeight)) {
+					initialTargets |= 1 << target;
+				}
+			}
+		}
+		PruneRule dataRootPruneRule = rootPruneRule;
+		rootPruneRule = rootPruneRule == PruneRule.EDGE_TYPES ? rootPruneRule : initialTargets == 0 ? PruneRule.VERTEX_COUNT : null;
+		this.targetWeights = targetWeights.clone();
+		this.maxVertexWeight = maxTargetWeight(initialTargets);
+		this.aliveTargets = initialTargets;
+		this.pendingTargets = targetWeights.length == Integer.SIZE ? -1 : (1 << targetWeights.length) - 1;
+		this.frameAliveTargets = new int[numEdges];
+		this.targetSolutionCounts = new long[targetWeights.length];
+		this.targetFirstSolutions = firstSolutionsOnly ? new int[targetWeights.length][] : null;
+		try {
+			solve(false, Long.MAX_VALUE);
+		} finally {
+			this.targetWeights = null;
+			this.maxVertexWeight = desiredVertexWeight;
+			this.frameAliveTargets = null;
+			rootPruneRule = dataRootPruneRule;
+		}
+	}
+
+	/**
+	 * @return The largest weight among the given targets
+	 */
+	private int maxTargetWeight(int targets) {
+		int maxWeight = 0;
+		for (; targets != 0; targets &= targets - 1) {
+			maxWeight = Math.max(maxWeight, targetWeights[Integer.numberOfTrailingZeros(targets)]);
+		}
+		return maxWeight;
+	}
+
+	private void solveCanonical(boolean storeSolutions) {
+		if (symmetries == null) {
+			List<int[]> symmetryList = new ArrayList<>();
+			for (int[] symmetry : data.getSymmetries()) {
+				if (!isIdentity(symmetry)) {
+					symmetryList.add(symmetry);
+				}
+			}
+			symmetries = symmetryList.toArray(new int[0][]);
+			inverseSymmetries = new int[symmetries.length][numEdges];
+			for (int s = 0; s < symmetries.length; ++s) {
+				for (int i = 0; i < numEdges; ++i) {
+					inverseSymmetries[s][symmetries[s][i]] = i;
+				}
+			}
+		}
+		breakSymmetries = true;
+		try {
+			solve(storeSolutions, Long.MAX_VALUE);
+		} finally {
+			breakSymmetries = false;
+		}
+	}
+
+	private static boolean isIdentity(int[] permutation) {
+		for (int i = 0; i < permutation.length; ++i) {
+			if (permutation[i] != i) return false;
+		}
+		return true;
+	}
+
+	private void solve(boolean storeSolutions, long maxSolutions) {
+		resetState();
+		foundSolutions.clear();
+		numSolutions = 0;
+		numSteps = 0;
+		this.storeSolutions = storeSolutions;
+		this.maxSolutions = maxSolutions;
+		try {
+			solveIterative();
+		} catch (SolutionLimitReached ignored) {
+		}
+	}
+
+	/**
+	 * Searches the whole subtree below the current state. The path through the search tree is kept on the decision stack
+	 * instead of the call stack, so the search depth is not limited by the thread's stack size.
+	 */
+	private void solveIterative() {
+		numFrames = 0;
+		runIterative(true, false);
+	}
+
+	/**
+	 * Continues the search, either from the node reached by the gluings on the decision stack, which has not been visited
+	 * yet, or by moving on from the gluing of the topmost frame, whose subtree has been searched completely.
+	 *
+	 * @param descend Whether to start by visiting the node reached by the decision stack
+	 * @param pauseAtSolutions Whether to return as soon as a solution has been found, leaving it in activeSolution.
+	 * The search can then be continued by calling this method again without descending.
+	 * @return True if paused at a solution, false if the search is finished
+	 */
+	private boolean runIterative(boolean descend, boolean pauseAtSolutions) {
+		while (true) {
+			if (descend) {
+				descend = false;
+				if (numSteps >= nextCheckpointStep) {
+					checkpointIfDue();
+				}
+				++numSteps;
+				if (breakSymmetries && !isLexLeaderCandidate()) {
+					// Not a canonical gluing, backtrack
+					++prunedNodes[PruneRule.SYMMETRY.ordinal()];
+				} else if (iterNext[numEdges] == numEdges) {
+					checkSolution();
+					if (pauseAtSolutions) {
+						return true;
+					}
+				} else {
+					int firstEdge = selectFirstEdge();
+					if (firstEdge != -1 && (memoKeys == null || !lookUpMemo())) {
+						if (frameAliveTargets != null) {
+							frameAliveTargets[numFrames] = aliveTargets;
+						}
+						int frame = FRAME_SIZE * numFrames++;
+						frames[frame + FRAME_FIRST_EDGE] = firstEdge;
+						frames[frame + FRAME_SECOND_EDGE] = matchingCandidateList[firstEdge];
+						frames[frame + FRAME_GLUING_KIND] = GLUING_NONE;
+					}
+				}
+			}
+			if (numFrames == 0) {
+				return false;
+			}
+			// Replace the gluing of the topmost frame by the next valid one, or drop the frame if there is none
+			int frame = FRAME_SIZE * (numFrames - 1);
+			int firstEdge = frames[frame + FRAME_FIRST_EDGE];
+			int secondEdge = frames[frame + FRAME_SECOND_EDGE];
+			int gluingKind = frames[frame + FRAME_GLUING_KIND];
+			if (gluingKind != GLUING_NONE) {
+				undoGluing(gluingKind, firstEdge, secondEdge);
+				gluingKind = GLUING_NONE;
+			}
+			int candidates = matchingCandidateList[firstEdge];
+			for (secondEdge = candidateNext[secondEdge]; secondEdge != candidates; secondEdge = candidateNext[secondEdge]) {
+				if (frameAliveTargets != null) {
+					// Each gluing narrows down the targets of the configuration it starts from
+					aliveTargets = frameAliveTargets[numFrames - 1] & pendingTargets;
+					if (aliveTargets == 0) {
+						break;
+					}
+					maxVertexWeight = maxTargetWeight(aliveTargets);
+				}
+				gluingKind = applyGluing(firstEdge, secondEdge);
+				if (gluingKind != GLUING_NONE) {
+					break;
+				}
+			}
+			if (gluingKind == GLUING_NONE) {
+				--numFrames;
+				if (memoKeys != null && frameMemoKeyLengths[numFrames] != 0) {
+					storeMemo(frameMemoKeys[numFrames], frameMemoKeyLengths[numFrames], numSolutions - frameMemoSolutions[numFrames], numSteps - frameMemoSteps[numFrames]);
+					frameMemoKeyLengths[numFrames] = 0;
+				}
+			} else {
+				frames[frame + FRAME_SECOND_EDGE] = secondEdge;
+				frames[frame + FRAME_GLUING_KIND] = gluingKind;
+				descend = true;
+			}
+		}
+	}
+
+	private void checkpointIfDue() {
+		long now = System.nanoTime();
+		if ((checkpointIntervalSteps > 0 && numSteps - lastCheckpointStep >= checkpointIntervalSteps)
+				|| (checkpointIntervalNanos > 0 && now - lastCheckpointNanos >= checkpointIntervalNanos)) {
+			writeCheckpoint(false);
+			lastCheckpointStep = numSteps;
+			lastCheckpointNanos = now;
+		}
+		scheduleCheckpoint();
+	}
+
+	private void scheduleCheckpoint() {
+		long stepsUntilCheck = CHECKPOINT_CLOCK_CHECK_STEPS;
+		if (checkpointIntervalSteps > 0) {
+			long stepsUntilCheckpoint = lastCheckpointStep + checkpointIntervalSteps - numSteps;
+			stepsUntilCheck = checkpointIntervalNanos > 0 ? Math.min(stepsUntilCheck, stepsUntilCheckpoint) : stepsUntilCheckpoint;
+		}
+		nextCheckpointStep = numSteps + stepsUntilCheck;
+	}
+
+	/**
+	 * Saves the search position, taken just before visiting the node reached by the gluings on the decision stack.
+	 * The file is written under a temporary name first and then moved into place, so there always is a complete checkpoint.
+	 */
+	private void writeCheckpoint(boolean finished) {
+		Path tempFile = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+				out.writeInt(CHECKPOINT_MAGIC);
+				out.writeInt(CHECKPOINT_VERSION);
+				out.writeLong(data.fingerprint());
+				out.writeBoolean(finished);
+				out.writeLong(numSolutions);
+				out.writeLong(numSteps);
+				out.writeInt(finished ? 0 : numFrames);
+				for (int i = 0; i < (finished ? 0 : FRAME_SIZE * numFrames); ++i) {
+					out.writeInt(frames[i]);
+				}
+			}
+			Files.move(tempFile, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not write checkpoint " + checkpointFile, e);
+		}
+	}
+
+	private void solveParallel(ForkJoinPool pool, boolean storeSolutions, boolean preserveOrder) {
+		resetState();
+		foundSolutions.clear();
+		numSolutions = 0;
+		numSteps = 0;
+		this.storeSolutions = storeSolutions;
+		this.maxSolutions = Long.MAX_VALUE;
+		SearchTask root = new SearchTask(new IsohedralTilingSolver2(this), parallelSplitDepth, preserveOrder ? null : new ConcurrentLinkedQueue<>());
+		pool.invoke(root);
+		numSolutions = root.numSolutions;
+		numSteps = root.numSteps;
+		System.arraycopy(root.prunedNodes, 0, prunedNodes, 0, prunedNodes.length);
+		if (storeSolutions) {
+			foundSolutions.addAll(preserveOrder ? root.solutions : root.unorderedSolutions);
+		}
+	}
+
+	private void checkSolution() {
+		// Disconnected gluings have already been cut off by joinComponents
+		if (DEBUG && ensureConnectivity && !data.isSolutionConnected(activeSolution)) {
+			System.err.println("Disconnected solution");
+		}
+		++numSolutions;
+		if (storeSolutions) {
+			foundSolutions.add(Arrays.copyOf(activeSolution, numEdges));
+		}
+		if (numSolutions >= maxSolutions) {
+			throw new SolutionLimitReached();
+		}
+		if (targetWeights != null) {
+			for (int targets = aliveTargets & pendingTargets; targets != 0; targets &= targets - 1) {
+				int target = Integer.numberOfTrailingZeros(targets);
+				++targetSolutionCounts[target];
+				if (targetFirstSolutions != null) {
+					targetFirstSolutions[target] = Arrays.copyOf(activeSolution, numEdges);
+					pendingTargets &= ~(1 << target);
+				}
+			}
+			if (pendingTargets == 0) {
+				throw new SolutionLimitReached();
+			}
+		}
+	}
 
 	/**
-	 * iterPrevious[i] = Previous edge after i to iterate over (index numEdges is a sentinel)
+	 * Checks whether the current partial gluing can still be completed to a solution that is lexicographically minimal
+	 * among its conjugates. For each symmetry, the conjugate of the partial gluing is compared to the partial gluing
+	 * edge by edge, as long as both are determined. Once a conjugate is known to be smaller, so is the conjugate of
+	 * any completion, and the branch can be cut off. For complete gluings, this is an exact test.
 	 */
-	private final int[] iterPrevious;
+	private boolean isLexLeaderCandidate() {
+		for (int s = 0; s < symmetries.length; ++s) {
+			int[] symmetry = symmetries[s];
+			int[] inverseSymmetry = inverseSymmetries[s];
+			for (int i = 0; i < numEdges; ++i) {
+				int gluedEdge = activeSolution[i];
+				int preimageGluedEdge = activeSolution[inverseSymmetry[i]];
+				if (gluedEdge == -1 || preimageGluedEdge == -1) {
+					break;
+				}
+				int conjugateGluedEdge = symmetry[preimageGluedEdge];
+				if (conjugateGluedEdge != gluedEdge) {
+					if (conjugateGluedEdge < gluedEdge) {
+						return false;
+					}
+					break;
+				}
+			}
+		}
+		return true;
+	}
 
 	/**
-	 * iterNext[i] = Next edge after i to iterate over (index numEdges is a sentinel)
+	 * Checks the conditions for solutions that no gluing can change, so that they only need to be checked once.
+	 *
+	 * @return The rule by which there are no solutions, or null if there may be some
 	 */
-	private final int[] iterNext;
+	private PruneRule findRootPruneRule() {
+		if (!areTypesBalanced()) {
+			return PruneRule.EDGE_TYPES;
+		}
+		// Without any weight to spare, every vertex is overweight, which is found by the search right away
+		if (!conePointsAllowed && desiredVertexWeight > 0 && !isVertexCountConsistent(desiredVertexWeight)) {
+			return PruneRule.VERTEX_COUNT;
+		}
+		return null;
+	}
 
 	/**
-	 * activeSolution[i] = the index of the edge matched to edge i if currently matched, otherwise -1
+	 * Checks whether, without cone points, the vertex weights can be split into vertices of exactly the given weight,
+	 * as far as the numbers of edges and edge cycles allow. Counting closed vertices as edge cycles of length zero, each
+	 * gluing of two edges either splits a cycle, adding one cycle, or joins two cycles, removing one. So the number of
+	 * cycles plus half the number of open edges never grows and only ever changes by an even amount. A solution ends with
+	 * one cycle per vertex, which makes totalWeight / vertexWeight cycles, so that number must be reachable.
+	 * Neither the remainder of the total weight nor the parity of the difference changes with any gluing, while the
+	 * difference itself is checked again during the search by {@link #selectFirstEdge}.
 	 */
-	private final int[] activeSolution;
+	private boolean isVertexCountConsistent(int vertexWeight) {
+		long totalWeight = 0;
+		for (int edge = 0; edge < numEdges; ++edge) {
+			totalWeight += leftVertexWeights[edge];
+		}
+		if (totalWeight % vertexWeight != 0) {
+			return false;
+		}
+		// All edges are open at the root
+		long numCycles = countOpenCycles(Long.MAX_VALUE);
+		long surplus = numCycles + numEdges / 2 - totalWeight / vertexWeight;
+		return surplus >= 0 && surplus % 2 == 0;
+	}
 
 	/**
-	 * List of all solutions found so far
+	 * Checks whether the edges can be paired up by type. Data validation ensures that edges of type t with
+	 * match type u can only be glued to edges of type u with match type t, and the same holds for their mirrors. So each
+	 * gluing closes equally many edges of both kinds, and edges of a kind matching itself are closed in pairs, except
+	 * when gluing an edge to itself. Hence there can only be solutions if there are as many open edges of type t with
+	 * match type u as of type u with match type t, and, without cone points, an even number of each self-matching kind.
+	 * Every gluing preserves these conditions for the open edges, so checking them once at the root prunes all that they
+	 * can prune.
+	 * <p>
+	 * Types are represented by their candidate lists, and the kinds are counted by sorting them.
 	 */
-	private final List<int[]> foundSolutions = new ArrayList<>();
+	private boolean areTypesBalanced() {
+		int emptyCandidateList = candidateListsEnd - 1;
+		if (kindKeys == null || kindKeys.length < numEdges) {
+			kindKeys = new long[capacity];
+		}
+		for (int edge = 0; edge < numEdges; ++edge) {
+			if (matchingCandidateList[edge] == emptyCandidateList) {
+				// No edge has a match type equal to the type of this edge
+				return false;
+			}
+			kindKeys[edge] = kindKey(matchingCandidateList[edge], candidateList[edge]);
+		}
+		Arrays.sort(kindKeys, 0, numEdges);
+		int end;
+		for (int start = 0; start < numEdges; start = end) {
+			end = start + 1;
+			while (end < numEdges && kindKeys[end] == kindKeys[start]) {
+				++end;
+			}
+			int edgeTypeList = (int) (kindKeys[start] >>> 32);
+			int matchTypeList = (int) kindKeys[start];
+			if (edgeTypeList != matchTypeList) {
+				if (end - start != countKind(kindKey(matchTypeList, edgeTypeList))) {
+					return false;
+				}
+			} else if (!conePointsAllowed && (end - start) % 2 != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static long kindKey(int edgeTypeList, int matchTypeList) {
+		return (long) edgeTypeList << 32 | matchTypeList;
+	}
 
 	/**
-	 * Solution count
+	 * @return The number of edges of the given kind, after kindKeys has been sorted
 	 */
-	private long numSolutions;
+	private int countKind(long kindKey) {
+		int index = Arrays.binarySearch(kindKeys, 0, numEdges, kindKey);
+		if (index < 0) {
+			return 0;
+		}
+		int first = index;
+		while (first > 0 && kindKeys[first - 1] == kindKey) {
+			--first;
+		}
+		int last = index;
+		while (last + 1 < numEdges && kindKeys[last + 1] == kindKey) {
+			++last;
+		}
+		return last - first + 1;
+	}
 
 	/**
-	 * Whether to store found solutions
+	 * Picks the edge to branch on next, which is the edge with the heaviest left vertex.
+	 * <p>
+	 * Also checks whether the open vertices can still be closed. Every vertex weighs at most maxVertexWeight, so the
+	 * open vertices need at least openWeight / maxVertexWeight (rounded up) more closed vertices. By the argument of
+	 * {@link #isVertexCountConsistent}, the open edges can form at most one closed vertex per open edge cycle plus one
+	 * per two open edges. Since there is at least one cycle, the cycles only need to be counted when the weight exceeds
+	 * what a single cycle would allow.
+	 *
+	 * @return The chosen edge, or -1 if that vertex is already overweight or the open vertices cannot all be closed any
+	 * more, so that no solutions are possible.
 	 */
-	private boolean storeSolutions;
+	private int selectFirstEdge() {
+		if (rootPruneRule != null) {
+			++prunedNodes[rootPruneRule.ordinal()];
+			return -1;
+		}
+		int bestCandidateEdge = -1;
+		int bestVertexWeight = -1;
+		int numOpenEdges = 0;
+		long openWeight = 0;
+		for (int candidateEdge = iterNext[numEdges]; candidateEdge != numEdges; candidateEdge = iterNext[candidateEdge]) {
+			int candidateVertexWeight = leftVertexWeights[candidateEdge];
+			if (candidateVertexWeight > bestVertexWeight) {
+				bestCandidateEdge = candidateEdge;
+				bestVertexWeight = candidateVertexWeight;
+			}
+			++numOpenEdges;
+			openWeight += candidateVertexWeight;
+		}
+		if (bestVertexWeight > maxVertexWeight) {
+			// Left vertex of bestCandidateEdge is overweight, no solutions possible
+			++prunedNodes[PruneRule.VERTEX_WEIGHT.ordinal()];
+			return -1;
+		}
+		long requiredVertices = (openWeight + maxVertexWeight - 1) / maxVertexWeight;
+		long requiredCycles = requiredVertices - numOpenEdges / 2;
+		if (requiredCycles > 1 && countOpenCycles(requiredCycles) < requiredCycles) {
+			++prunedNodes[PruneRule.VERTEX_COUNT.ordinal()];
+			return -1;
+		}
+		return bestCandidateEdge;
+	}
 
 	/**
-	 * How many solutions to find at most
+	 * @return The number of cycles the open edges form, or the given limit if there are at least that many
 	 */
-	private long maxSolutions;
+	private long countOpenCycles(long limit) {
+		if (++cycleMark == 0) {
+			Arrays.fill(cycleMarks, 0);
+			cycleMark = 1;
+		}
+		long numCycles = 0;
+		for (int edge = iterNext[numEdges]; edge != numEdges; edge = iterNext[edge]) {
+			if (cycleMarks[edge] == cycleMark) {
+				continue;
+			}
+			if (++numCycles >= limit) {
+				return limit;
+			}
+			int cycleEdge = edge;
+			do {
+				cycleMarks[cycleEdge] = cycleMark;
+				cycleEdge = edgeRightNeighbors[cycleEdge];
+			} while (cycleEdge != edge);
+		}
+		return numCycles;
+	}
 
 	/**
-	 * How many steps the current solve has taken
+	 * Looks up the current configuration of open edges in the memo table. On a hit, its number of solutions is added to
+	 * the count. On a miss, its key is kept with the frame about to be pushed, so that the count of its subtree can be
+	 * stored once the frame is dropped.
+	 *
+	 * @return True if the subtree has been counted by the lookup
 	 */
-	private long numSteps;
-
-	public IsohedralTilingSolver2(IsohedralTilingSolver2Data data) {
-
-		data.validate();
-
-		this.data = data;
-		this.numEdges = data.numEdges;
-		this.desiredVertexWeight = data.desiredVertexWeight;
-		this.edgeRightNeighbors = Arrays.copyOf(data.edgeRightNeighbors, data.edgeRightNeighbors.length);
-		this.edgeLeftNeighbors = Arrays.copyOf(data.edgeLeftNeighbors, data.edgeLeftNeighbors.length);
-		this.edgeMirrors = Arrays.copyOf(data.edgeMirrors, data.edgeMirrors.length);
-		this.leftVertexWeights = Arrays.copyOf(data.leftVertexWeights, data.leftVertexWeights.length);
-		this.edgeTypes = Arrays.copyOf(data.edgeTypes, data.edgeTypes.length);
-		this.matchTypes = Arrays.copyOf(data.matchTypes, data.matchTypes.length);
-		this.conePointsAllowed = data.conePointsAllowed;
-		this.ensureConnectivity = data.ensureConnectivity;
+	private boolean lookUpMemo() {
+		int keyLength = buildMemoKey();
+		if (keyLength == 0) {
+			return false;
+		}
+		int bucket = memoBucket(memoKeyBuffer, keyLength);
+		for (int slot = bucket; slot < bucket + 2; ++slot) {
+			int[] key = memoKeys[slot];
+			if (key != null && memoKeyLengths[slot] == keyLength && memoKeyEquals(key, keyLength)) {
+				numSolutions += memoSolutions[slot];
+				++numMemoHits;
+				return true;
+			}
+		}
+		int[] frameKey = frameMemoKeys[numFrames];
+		if (frameKey == null || frameKey.length < keyLength) {
+			// Allocated once per depth: every gluing closes at least one edge, so keys only get shorter further down
+			frameKey = new int[Math.max(keyLength, 2 + 6 * (numEdges - numFrames))];
+			frameMemoKeys[numFrames] = frameKey;
+		}
+		System.arraycopy(memoKeyBuffer, 0, frameKey, 0, keyLength);
+		frameMemoKeyLengths[numFrames] = keyLength;
+		frameMemoSolutions[numFrames] = numSolutions;
+		frameMemoSteps[numFrames] = numSteps;
+		return false;
+	}
 
-		this.iterPrevious = new int[numEdges + 1];
-		this.iterNext = new int[numEdges + 1];
-		for (int i = 0; i < numEdges; ++i) {
-			iterPrevious[i + 1] = i;
-			iterNext[i] = i + 1;
+	/**
+	 * Stores a copy of the given key, in the array of the entry it replaces if that is long enough.
+	 */
+	private void storeMemo(int[] key, int keyLength, long subtreeSolutions, long subtreeSteps) {
+		int bucket = memoBucket(key, keyLength);
+		int slot = memoKeys[bucket] == null || (memoKeys[bucket + 1] != null && memoSteps[bucket] <= memoSteps[bucket + 1]) ? bucket : bucket + 1;
+		int[] storedKey = memoKeys[slot];
+		if (storedKey == null || storedKey.length < keyLength) {
+			storedKey = new int[keyLength];
+			memoKeys[slot] = storedKey;
 		}
-		iterPrevious[0] = numEdges;
-		iterNext[numEdges] = 0;
+		System.arraycopy(key, 0, storedKey, 0, keyLength);
+		memoKeyLengths[slot] = keyLength;
+		memoSolutions[slot] = subtreeSolutions;
+		memoSteps[slot] = subtreeSteps;
+	}
 
-		this.activeSolution = new int[numEdges];
+	private boolean memoKeyEquals(int[] key, int keyLength) {
+		for (int i = 0; i < keyLength; ++i) {
+			if (key[i] != memoKeyBuffer[i]) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	/**
-	 * Finds a gluing with the given edge data.
-	 *
-	 * @return A list representing a gluing, or null if no valid gluing exists.
+	 * @return The first slot of the bucket of the given key
 	 */
-	public int[] findFirstSolution() {
-		solve(true, 1L);
-		return foundSolutions.isEmpty() ? null : foundSolutions.get(0);
+	private int memoBucket(int[] key, int keyLength) {
+		int hash = 0;
+		for (int i = 0; i < keyLength; ++i) {
+			hash = (hash ^ key[i]) * 0x9E3779B1;
+		}
+		hash ^= hash >>> 16;
+		return hash & (memoTableSize - 2);
 	}
 
 	/**
-	 * Finds all possible gluings with the given edge data.
+	 * Writes a key for the current configuration of open edges to memoKeyBuffer that is the same for configurations that
+	 * are the same up to relabeling, in most cases. Every open edge cycle is started at its lexicographically smallest
+	 * rotation, and the cycles are sorted; the edges are then numbered in that order. The key lists each cycle's length
+	 * and, for each of its edges, the left vertex weight, the edge and match type, the number of the mirror and, when
+	 * checking connectivity, the component in order of appearance. Cycles with nontrivial rotational symmetries may get
+	 * different keys depending on the labeling, which only costs a lookup, since the key describes the configuration
+	 * completely.
 	 *
-	 * @return A list of solutions, where a solution consists of an array of gluings.
+	 * @return The length of the key, or 0 if the configuration has too few open edges to be worth memoizing
 	 */
-	public List<int[]> findAllSolutions() {
-		solve(true, Long.MAX_VALUE);
-		return foundSolutions;
+	private int buildMemoKey() {
+		int numOpenEdges = 0;
+		for (int edge = iterNext[numEdges]; edge != numEdges; edge = iterNext[edge]) {
+			memoPositions[edge] = -1;
+			++numOpenEdges;
+		}
+		if (numOpenEdges < MIN_MEMO_EDGES) {
+			return 0;
+		}
+		int numCycles = 0;
+		for (int edge = iterNext[numEdges]; edge != numEdges; edge = iterNext[edge]) {
+			if (memoPositions[edge] != -1) {
+				continue;
+			}
+			int length = 0;
+			int cycleEdge = edge;
+			do {
+				memoPositions[cycleEdge] = 0;
+				++length;
+				cycleEdge = edgeRightNeighbors[cycleEdge];
+			} while (cycleEdge != edge);
+			int start = edge;
+			for (cycleEdge = edgeRightNeighbors[edge]; cycleEdge != edge; cycleEdge = edgeRightNeighbors[cycleEdge]) {
+				if (compareOpenSequences(cycleEdge, start, length) < 0) {
+					start = cycleEdge;
+				}
+			}
+			// Insertion sort by length, then by sequence
+			int index = numCycles++;
+			while (index > 0 && (memoCycleLengths[index - 1] > length || memoCycleLengths[index - 1] == length
+					&& compareOpenSequences(memoCycleStarts[index - 1], start, length) > 0)) {
+				memoCycleStarts[index] = memoCycleStarts[index - 1];
+				memoCycleLengths[index] = memoCycleLengths[index - 1];
+				--index;
+			}
+			memoCycleStarts[index] = start;
+			memoCycleLengths[index] = length;
+		}
+		int position = 0;
+		for (int cycle = 0; cycle < numCycles; ++cycle) {
+			int cycleEdge = memoCycleStarts[cycle];
+			for (int i = 0; i < memoCycleLengths[cycle]; ++i) {
+				memoPositions[cycleEdge] = position++;
+				cycleEdge = edgeRightNeighbors[cycleEdge];
+			}
+		}
+		int keyLength = 0;
+		int numComponents = 0;
+		memoKeyBuffer[keyLength++] = numOpenEdges;
+		memoKeyBuffer[keyLength++] = numCycles;
+		for (int cycle = 0; cycle < numCycles; ++cycle) {
+			memoKeyBuffer[keyLength++] = memoCycleLengths[cycle];
+			int cycleEdge = memoCycleStarts[cycle];
+			for (int i = 0; i < memoCycleLengths[cycle]; ++i) {
+				memoKeyBuffer[keyLength++] = leftVertexWeights[cycleEdge];
+				memoKeyBuffer[keyLength++] = edgeTypes[cycleEdge];
+				memoKeyBuffer[keyLength++] = matchTypes[cycleEdge];
+				memoKeyBuffer[keyLength++] = memoPositions[edgeMirrors[cycleEdge]];
+				if (ensureConnectivity) {
+					int root = findComponent(cycleEdge);
+					if (memoComponentIds[root] == -1) {
+						memoComponentIds[root] = numComponents;
+						memoComponentRoots[numComponents++] = root;
+					}
+					memoKeyBuffer[keyLength++] = memoComponentIds[root];
+				}
+				cycleEdge = edgeRightNeighbors[cycleEdge];
+			}
+		}
+		for (int component = 0; component < numComponents; ++component) {
+			memoComponentIds[memoComponentRoots[component]] = -1;
+		}
+		return keyLength;
 	}
 
 	/**
-	 * Returns the number of gluings with the given edge data.
-	 *
-	 * @return The number of gluings
+	 * Compares the left vertex weights, edge types and match types along two open edge cycles of the same length,
+	 * starting from the given edges.
 	 */
-	public long countSolutions() {
-		solve(false, Long.MAX_VALUE);
-		return numSolutions;
+	private int compareOpenSequences(int firstStart, int secondStart, int length) {
+		int first = firstStart;
+		int second = secondStart;
+		for (int i = 0; i < length; ++i) {
+			int difference = Integer.compare(leftVertexWeights[first], leftVertexWeights[second]);
+			if (difference == 0) {
+				difference = Integer.compare(edgeTypes[first], edgeTypes[second]);
+			}
+			if (difference == 0) {
+				difference = Integer.compare(matchTypes[first], matchTypes[second]);
+			}
+			if (difference != 0) {
+				return difference;
+			}
+			first = edgeRightNeighbors[first];
+			second = edgeRightNeighbors[second];
+		}
+		return 0;
 	}
 
 	/**
-	 * Checks whether there is any valid gluing with the given edge data.
+	 * Glues the given matching edges (and their mirrors where required), hides them from iteration and joins their
+	 * components. If the gluing turns out to be invalid, it is undone again.
 	 *
-	 * @return True if a gluing exists
+	 * @return The kind of gluing applied, to be passed to {@link #undoGluing} later, or {@link #GLUING_NONE} if the gluing is invalid.
 	 */
-	public boolean hasSolution() {
-		solve(false, 1L);
-		return numSolutions > 0;
+	private int applyGluing(int firstEdge, int secondEdge) {
+		int gluingKind = glueAndHide(firstEdge, secondEdge);
+		if (gluingKind != GLUING_NONE && !joinComponents(firstEdge, secondEdge, GLUED_EDGE_COUNTS[gluingKind])) {
+			++prunedNodes[PruneRule.CONNECTIVITY.ordinal()];
+			splitComponents();
+			unhideAndUnglue(gluingKind, firstEdge, secondEdge);
+			return GLUING_NONE;
+		}
+		return gluingKind;
 	}
 
 	/**
-	 * Returns the number of iteration steps taken during the last solve.
-	 *
-	 * @return The number of steps.
+	 * Reverts a successful {@link #applyGluing} call with the same arguments.
 	 */
-	public long getStepsTaken() {
-		return numSteps;
+	private void undoGluing(int gluingKind, int firstEdge, int secondEdge) {
+		splitComponents();
+		unhideAndUnglue(gluingKind, firstEdge, secondEdge);
 	}
 
-	private void solve(boolean storeSolutions, long maxSolutions) {
-		Arrays.fill(activeSolution, -1);
-		foundSolutions.clear();
-		numSolutions = 0;
-		numSteps = 0;
-		this.storeSolutions = storeSolutions;
-		this.maxSolutions = maxSolutions;
-		try {
-			solveStep();
-		} catch (SolutionLimitReached ignored) {
+	private int glueAndHide(int firstEdge, int secondEdge) {
+		if (firstEdge == secondEdge && firstEdge == edgeMirrors[firstEdge]) {
+			// Gluing a self-mirrored edge to itself
+			if (!conePointsAllowed) {
+				return GLUING_NONE;
+			}
+			if (!glueSelf(firstEdge)) {
+				unglueSelf(firstEdge);
+				++prunedNodes[PruneRule.VERTEX_WEIGHT.ordinal()];
+				return GLUING_NONE;
+			}
+			hide(firstEdge);
+			debugGluing(firstEdge, secondEdge);
+			return GLUING_SELF_MIRRORED_SELF;
+		} else if (firstEdge == secondEdge) {
+			// Gluing a non-self-mirrored edge to itself
+			if (!conePointsAllowed) {
+				return GLUING_NONE;
+			}
+			boolean glueSuccess = glueSelf(firstEdge);
+			glueSuccess &= glueSelf(edgeMirrors[firstEdge]);
+			if (!glueSuccess) {
+				unglueSelf(edgeMirrors[firstEdge]);
+				unglueSelf(firstEdge);
+				++prunedNodes[PruneRule.VERTEX_WEIGHT.ordinal()];
+				return GLUING_NONE;
+			}
+			hide(firstEdge);
+			hide(edgeMirrors[firstEdge]);
+			debugGluing(firstEdge, secondEdge);
+			return GLUING_SELF;
+		} else if (firstEdge == edgeMirrors[secondEdge]) {
+			// Gluing a non-self-mirrored edge to its own mirror
+			if (!glue(firstEdge, secondEdge)) {
+				unglue(firstEdge, secondEdge);
+				++prunedNodes[PruneRule.VERTEX_WEIGHT.ordinal()];
+				return GLUING_NONE;
+			}
+			hide(firstEdge);
+			hide(secondEdge);
+			debugGluing(firstEdge, secondEdge);
+			return GLUING_PAIR;
+		} else if (firstEdge == edgeMirrors[firstEdge] || secondEdge == edgeMirrors[secondEdge]) {
+			// Gluing a self-mirrored edge to another
+			// This requires the other edge to be self-mirrored too, otherwise gluing makes no sense
+			if (firstEdge != edgeMirrors[firstEdge] || secondEdge != edgeMirrors[secondEdge]) {
+				return GLUING_NONE;
+			}
+			if (!glue(firstEdge, secondEdge)) {
+				unglue(firstEdge, secondEdge);
+				++prunedNodes[PruneRule.VERTEX_WEIGHT.ordinal()];
+				return GLUING_NONE;
+			}
+			hide(firstEdge);
+			hide(secondEdge);
+			debugGluing(firstEdge, secondEdge);
+			return GLUING_PAIR;
+		} else {
+			// General case
+			boolean glueSuccess = glue(firstEdge, secondEdge);
+			glueSuccess &= glue(edgeMirrors[firstEdge], edgeMirrors[secondEdge]);
+			if (!glueSuccess) {
+				unglue(edgeMirrors[firstEdge], edgeMirrors[secondEdge]);
+				unglue(firstEdge, secondEdge);
+				++prunedNodes[PruneRule.VERTEX_WEIGHT.ordinal()];
+				return GLUING_NONE;
+			}
+			hide(firstEdge);
+			hide(secondEdge);
+			hide(edgeMirrors[firstEdge]);
+			hide(edgeMirrors[secondEdge]);
+			debugGluing(firstEdge, secondEdge);
+			return GLUING_GENERAL;
 		}
 	}
 
-	private void checkSolution() {
-		if (ensureConnectivity && !data.isSolutionConnected(activeSolution)) {
-			return;
+	private void debugGluing(int firstEdge, int secondEdge) {
+		if (DEBUG) {
+			System.out.println("Gluing " + firstEdge + " to " + (firstEdge == secondEdge ? "itself" : secondEdge));
 		}
-		++numSolutions;
-		if (storeSolutions) {
-			foundSolutions.add(Arrays.copyOf(activeSolution, activeSolution.length));
+	}
+
+	private void unhideAndUnglue(int gluingKind, int firstEdge, int secondEdge) {
+		if (DEBUG) {
+			System.out.println("Ungluing " + firstEdge + " from " + (firstEdge == secondEdge ? "itself" : secondEdge));
 		}
-		if (numSolutions >= maxSolutions) {
-			throw new SolutionLimitReached();
+		if (gluingKind == GLUING_GENERAL) {
+			unhide(edgeMirrors[secondEdge]);
+			unhide(edgeMirrors[firstEdge]);
+			unhide(secondEdge);
+			unhide(firstEdge);
+			unglue(edgeMirrors[firstEdge], edgeMirrors[secondEdge]);
+			unglue(firstEdge, secondEdge);
+		} else if (gluingKind == GLUING_PAIR) {
+			unhide(secondEdge);
+			unhide(firstEdge);
+			unglue(firstEdge, secondEdge);
+		} else if (gluingKind == GLUING_SELF) {
+			unhide(edgeMirrors[firstEdge]);
+			unhide(firstEdge);
+			unglueSelf(edgeMirrors[firstEdge]);
+			unglueSelf(firstEdge);
+		} else {
+			unhide(firstEdge);
+			unglueSelf(firstEdge);
 		}
 	}
 
-	private void solveStep() {
-		++numSteps;
-		if (iterNext[numEdges] == numEdges) {
-			checkSolution();
-			return;
+	/**
+	 * Joins the components of two newly glued edges and accounts for the edges that are no longer free.
+	 * Must always be followed by a matching call to {@link #splitComponents}.
+	 *
+	 * @return False if the joined component now has no free edges left while other components still do.
+	 * Since that component can never be connected to the rest any more, no connected solutions remain.
+	 */
+	private boolean joinComponents(int firstEdge, int secondEdge, int numGluedEdges) {
+		if (!ensureConnectivity) {
+			return true;
 		}
-		int bestCandidateEdge = -1;
-		int bestVertexWeight = -1;
-		for (int candidateEdge = iterNext[numEdges]; candidateEdge != numEdges; candidateEdge = iterNext[candidateEdge]) {
-			int candidateVertexWeight = leftVertexWeights[candidateEdge];
-			if (candidateVertexWeight > bestVertexWeight) {
-				bestCandidateEdge = candidateEdge;
-				bestVertexWeight = candidateVertexWeight;
-			}
+		int root = findComponent(firstEdge);
+		int otherRoot = findComponent(secondEdge);
+		if (componentSize[root] < componentSize[otherRoot]) {
+			int swap = root;
+			root = otherRoot;
+			otherRoot = swap;
 		}
-		if (bestVertexWeight > desiredVertexWeight) {
-			// Left vertex of bestCandidateEdge is overweight, no solutions possible
+		int mergedRoot = mergeComponents(root, otherRoot);
+		componentFreeEdges[root] -= numGluedEdges;
+		componentJoinStack[componentJoinStackSize++] = root;
+		componentJoinStack[componentJoinStackSize++] = mergedRoot;
+		componentJoinStack[componentJoinStackSize++] = numGluedEdges;
+		return componentFreeEdges[root] > 0 || iterNext[numEdges] == numEdges;
+	}
+
+	/**
+	 * Reverts the last {@link #joinComponents} call.
+	 */
+	private void splitComponents() {
+		if (!ensureConnectivity) {
 			return;
 		}
-		int firstEdge = bestCandidateEdge;
-		int firstEdgeType = edgeTypes[firstEdge];
-		for (int secondEdge = iterNext[numEdges]; secondEdge != numEdges; secondEdge = iterNext[secondEdge]) {
-			if (firstEdgeType == matchTypes[secondEdge]) {
-				// Match found
-				if (firstEdge == secondEdge && firstEdge == edgeMirrors[firstEdge]) {
-					// Gluing a self-mirrored edge to itself
-					if (conePointsAllowed) {
-						boolean glueSuccess = glueSelf(firstEdge);
-						if (glueSuccess) {
-							hide(firstEdge);
-							if (DEBUG) {
-								System.out.println("Gluing " + firstEdge + " to itself");
-							}
-							solveStep();
-							if (DEBUG) {
-								System.out.println("Ungluing " + firstEdge + " from itself");
-							}
-							unhide(firstEdge);
-						}
-						unglueSelf(firstEdge);
-					}
-				} else if (firstEdge == secondEdge) {
-					// Gluing a non-self-mirrored edge to itself
-					if (conePointsAllowed) {
-						boolean glueSuccess = glueSelf(firstEdge);
-						glueSuccess &= glueSelf(edgeMirrors[firstEdge]);
-						if (glueSuccess) {
-							hide(firstEdge);
-							hide(edgeMirrors[firstEdge]);
-							if (DEBUG) {
-								System.out.println("Gluing " + firstEdge + " to itself");
-							}
-							solveStep();
-							if (DEBUG) {
-								System.out.println("Ungluing " + firstEdge + " from itself");
-							}
-							unhide(edgeMirrors[firstEdge]);
-							unhide(firstEdge);
-						}
-						unglueSelf(edgeMirrors[firstEdge]);
-						unglueSelf(firstEdge);
-					}
-				} else if (firstEdge == edgeMirrors[secondEdge]) {
-					// Gluing a non-self-mirrored edge to its own mirror
-					boolean glueSuccess = glue(firstEdge, secondEdge);
-					if (glueSuccess) {
-						hide(firstEdge);
-						hide(secondEdge);
-						if (DEBUG) {
-							System.out.println("Gluing " + firstEdge + " to " + secondEdge);
-						}
-						solveStep();
-						if (DEBUG) {
-							System.out.println("Ungluing " + firstEdge + " from " + secondEdge);
-						}
-						unhide(secondEdge);
-						unhide(firstEdge);
-					}
-					unglue(firstEdge, secondEdge);
-				} else if (firstEdge == edgeMirrors[firstEdge] || secondEdge == edgeMirrors[secondEdge]) {
-					// Gluing a self-mirrored edge to another
-					// This requires the other edge to be self-mirrored too, otherwise gluing makes no sense
-					if (firstEdge == edgeMirrors[firstEdge] && secondEdge == edgeMirrors[secondEdge]) {
-						boolean glueSuccess = glue(firstEdge, secondEdge);
-						if (glueSuccess) {
-							hide(firstEdge);
-							hide(secondEdge);
-							if (DEBUG) {
-								System.out.println("Gluing " + firstEdge + " to " + secondEdge);
-							}
-							solveStep();
-							if (DEBUG) {
-								System.out.println("Ungluing " + firstEdge + " from " + secondEdge);
-							}
-							unhide(secondEdge);
-							unhide(firstEdge);
-						}
-						unglue(firstEdge, secondEdge);
-					}
-				} else {
-					// General case
-					boolean glueSuccess = glue(firstEdge, secondEdge);
-					glueSuccess &= glue(edgeMirrors[firstEdge], edgeMirrors[secondEdge]);
-					if (glueSuccess) {
-						hide(firstEdge);
-						hide(secondEdge);
-						hide(edgeMirrors[firstEdge]);
-						hide(edgeMirrors[secondEdge]);
-						if (DEBUG) {
-							System.out.println("Gluing " + firstEdge + " to " + secondEdge);
-						}
-						solveStep();
-						if (DEBUG) {
-							System.out.println("Ungluing " + firstEdge + " from " + secondEdge);
-						}
-						unhide(edgeMirrors[secondEdge]);
-						unhide(edgeMirrors[firstEdge]);
-						unhide(secondEdge);
-						unhide(firstEdge);
-					}
-					unglue(edgeMirrors[firstEdge], edgeMirrors[secondEdge]);
-					unglue(firstEdge, secondEdge);
-				}
-			}
+		int numGluedEdges = componentJoinStack[--componentJoinStackSize];
+		int mergedRoot = componentJoinStack[--componentJoinStackSize];
+		int root = componentJoinStack[--componentJoinStackSize];
+		componentFreeEdges[root] += numGluedEdges;
+		if (mergedRoot != -1) {
+			componentParent[mergedRoot] = mergedRoot;
+			componentSize[root] -= componentSize[mergedRoot];
+			componentFreeEdges[root] -= componentFreeEdges[mergedRoot];
+		}
+	}
+
+	private void unionComponents(int edge, int otherEdge) {
+		int root = findComponent(edge);
+		int otherRoot = findComponent(otherEdge);
+		if (componentSize[root] < componentSize[otherRoot]) {
+			mergeComponents(otherRoot, root);
+		} else {
+			mergeComponents(root, otherRoot);
+		}
+	}
+
+	/**
+	 * Merges the component with root otherRoot into the one with root root.
+	 *
+	 * @return otherRoot, or -1 if both components were already the same
+	 */
+	private int mergeComponents(int root, int otherRoot) {
+		if (root == otherRoot) {
+			return -1;
+		}
+		componentParent[otherRoot] = root;
+		componentSize[root] += componentSize[otherRoot];
+		componentFreeEdges[root] += componentFreeEdges[otherRoot];
+		return otherRoot;
+	}
+
+	private int findComponent(int edge) {
+		// No path compression, so that merges can be undone
+		while (componentParent[edge] != edge) {
+			edge = componentParent[edge];
 		}
+		return edge;
 	}
 
 	boolean glue(int firstEdge, int secondEdge) {
@@ -298,6 +2028,8 @@ public class IsohedralTilingSolver2 {
 			edgeRightNeighbors[edgeLeftNeighbors[firstEdge]] = edgeRightNeighbors[secondEdge];
 			edgeLeftNeighbors[edgeRightNeighbors[secondEdge]] = edgeLeftNeighbors[firstEdge];
 			leftVertexWeights[edgeRightNeighbors[secondEdge]] += leftVertexWeights[firstEdge];
+			// Vertex weights only grow, so an overweight vertex can never be completed
+			success &= leftVertexWeights[edgeRightNeighbors[secondEdge]] <= maxVertexWeight;
 		}
 		if (edgeLeftNeighbors[secondEdge] == firstEdge) {
 			success &= isValidWeight(leftVertexWeights[secondEdge]);
@@ -305,6 +2037,7 @@ public class IsohedralTilingSolver2 {
 			edgeRightNeighbors[edgeLeftNeighbors[secondEdge]] = edgeRightNeighbors[firstEdge];
 			edgeLeftNeighbors[edgeRightNeighbors[firstEdge]] = edgeLeftNeighbors[secondEdge];
 			leftVertexWeights[edgeRightNeighbors[firstEdge]] += leftVertexWeights[secondEdge];
+			success &= leftVertexWeights[edgeRightNeighbors[firstEdge]] <= maxVertexWeight;
 		}
 		activeSolution[firstEdge] = secondEdge;
 		activeSolution[secondEdge] = firstEdge;
@@ -337,6 +2070,7 @@ public class IsohedralTilingSolver2 {
 			edgeRightNeighbors[edgeLeftNeighbors[edge]] = edgeRightNeighbors[edge];
 			edgeLeftNeighbors[edgeRightNeighbors[edge]] = edgeLeftNeighbors[edge];
 			leftVertexWeights[edgeRightNeighbors[edge]] += leftVertexWeights[edge];
+			success &= leftVertexWeights[edgeRightNeighbors[edge]] <= maxVertexWeight;
 		}
 		activeSolution[edge] = edge;
 		return success;
@@ -355,27 +2089,174 @@ public class IsohedralTilingSolver2 {
 		return true;
 	}
 
+	/**
+	 * Checks the weight of a vertex that has just been closed. When solving for several target weights, the targets it
+	 * is not valid for are dropped.
+	 */
 	private boolean isValidWeight(int weight) {
+		if (targetWeights != null) {
+			for (int targets = aliveTargets; targets != 0; targets &= targets - 1) {
+				int target = Integer.numberOfTrailingZeros(targets);
+				if (!isValidWeight(weight, targetWeights[target])) {
+					aliveTargets &= ~(1 << target);
+				}
+			}
+			return aliveTargets != 0;
+		}
+		return isValidWeight(weight, desiredVertexWeight);
+	}
+
+	private boolean isValidWeight(int weight, int vertexWeight) {
 		if (conePointsAllowed) {
-			return desiredVertexWeight % weight == 0;
+			return vertexWeight % weight == 0;
 		} else {
-			return desiredVertexWeight == weight;
+			return vertexWeight == weight;
 		}
 	}
 
+
 	void hide(int edge) {
 		iterNext[iterPrevious[edge]] = iterNext[edge];
 		iterPrevious[iterNext[edge]] = iterPrevious[edge];
+		if (separateCandidateLists) {
+			candidateNext[candidatePrevious[edge]] = candidateNext[edge];
+			candidatePrevious[candidateNext[edge]] = candidatePrevious[edge];
+		}
 	}
 
 	void unhide(int edge) {
+		if (separateCandidateLists) {
+			candidatePrevious[candidateNext[edge]] = edge;
+			candidateNext[candidatePrevious[edge]] = edge;
+		}
 		iterPrevious[iterNext[edge]] = edge;
 		iterNext[iterPrevious[edge]] = edge;
 	}
 
+	/**
+	 * Parallel search task over one subtree. The first splitDepth levels of the subtree are handled by forking
+	 * one subtask per valid gluing, each on its own copy of the search state; deeper levels are searched
+	 * sequentially with {@link #solveIterative}.
+	 */
+	private static class SearchTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final IsohedralTilingSolver2 solver;
+		private final int splitDepth;
+		// Collects solution lists in completion order, or null to keep them in search order
+		private final Collection<int[]> unorderedSolutions;
+
+		private long numSolutions;
+		private long numSteps;
+		private long[] prunedNodes;
+		private List<int[]> solutions;
+
+		SearchTask(IsohedralTilingSolver2 solver, int splitDepth, Collection<int[]> unorderedSolutions) {
+			this.solver = solver;
+			this.splitDepth = splitDepth;
+			this.unorderedSolutions = unorderedSolutions;
+		}
+
+		@Override
+		protected void compute() {
+			if (splitDepth == 0) {
+				solver.solveIterative();
+				finish(solver.numSolutions, solver.numSteps, solver.prunedNodes, solver.foundSolutions);
+				return;
+			}
+			// Same as a level of solveIterative, but forking instead of descending
+			++solver.numSteps;
+			if (solver.iterNext[solver.numEdges] == solver.numEdges) {
+				solver.checkSolution();
+				finish(solver.numSolutions, solver.numSteps, solver.prunedNodes, solver.foundSolutions);
+				return;
+			}
+			List<SearchTask> subtasks = new ArrayList<>();
+			int firstEdge = solver.selectFirstEdge();
+			if (firstEdge != -1) {
+				int candidates = solver.matchingCandidateList[firstEdge];
+				for (int secondEdge = solver.candidateNext[candidates]; secondEdge != candidates; secondEdge = solver.candidateNext[secondEdge]) {
+					int gluingKind = solver.applyGluing(firstEdge, secondEdge);
+					if (gluingKind != GLUING_NONE) {
+						subtasks.add(new SearchTask(new IsohedralTilingSolver2(solver), splitDepth - 1, unorderedSolutions));
+						solver.undoGluing(gluingKind, firstEdge, secondEdge);
+					}
+				}
+			}
+			invokeAll(subtasks);
+			long totalSolutions = 0;
+			long totalSteps = solver.numSteps;
+			long[] totalPrunedNodes = solver.prunedNodes.clone();
+			List<int[]> allSolutions = new ArrayList<>();
+			for (SearchTask subtask : subtasks) {
+				totalSolutions += subtask.numSolutions;
+				totalSteps += subtask.numSteps;
+				for (int rule = 0; rule < totalPrunedNodes.length; ++rule) {
+					totalPrunedNodes[rule] += subtask.prunedNodes[rule];
+				}
+				if (subtask.solutions != null) {
+					allSolutions.addAll(subtask.solutions);
+				}
+			}
+			numSolutions = totalSolutions;
+			numSteps = totalSteps;
+			prunedNodes = totalPrunedNodes;
+			solutions = allSolutions;
+		}
+
+		private void finish(long numSolutions, long numSteps, long[] prunedNodes, List<int[]> solutions) {
+			this.numSolutions = numSolutions;
+			this.numSteps = numSteps;
+			this.prunedNodes = prunedNodes;
+			if (unorderedSolutions != null) {
+				unorderedSolutions.addAll(solutions);
+			} else {
+				this.solutions = solutions;
+			}
+		}
+	}
+
+	/**
+	 * Runs the search of its own solver copy in pieces, pausing after every solution.
+	 */
+	private static class SolutionIterator implements Iterator<int[]> {
+		private final IsohedralTilingSolver2 solver;
+		private boolean started;
+		private boolean hasPendingSolution;
+		private boolean finished;
+
+		SolutionIterator(IsohedralTilingSolver2 solver) {
+			this.solver = solver;
+			solver.resetState();
+			solver.numSolutions = 0;
+			solver.numSteps = 0;
+			solver.numFrames = 0;
+			solver.storeSolutions = false;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (!hasPendingSolution && !finished) {
+				hasPendingSolution = solver.runIterative(!started, true);
+				finished = !hasPendingSolution;
+				started = true;
+			}
+			return hasPendingSolution;
+		}
+
+		@Override
+		public int[] next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			hasPendingSolution = false;
+			return Arrays.copyOf(solver.activeSolution, solver.numEdges);
+		}
+	}
+
 	/**
 	 * Internal exception that is thrown once per solve, once the desired number of solutions has been found.
-	 * This is probably faster than checking for whether we're done in every single call of {@link #solveStep}.
+	 * This is probably faster than checking for whether we're done in every single step of {@link #solveIterative}.
 	 */
 	private static class SolutionLimitReached extends RuntimeException {
 	}
@@ -13,6 +13,10 @@ public class IsohedralTilingSolver2Data {
 	private static final int MAX_NUM_EDGES = Integer.MAX_VALUE / 2;
 	private static final int MAX_VERTEX_WEIGHT = Integer.MAX_VALUE / 2;
 
+	// FNV-1a parameters for fingerprint, applied to the bytes of each value
+	private static final long FINGERPRINT_OFFSET = 0xcbf29ce484222325L;
+	private static final long FINGERPRINT_PRIME = 0x100000001b3L;
+
 	/**
 	 * Number of edges in the configuration
 	 */
@@ -69,6 +73,12 @@ public class IsohedralTilingSolver2Data {
 	 */
 	private List<int[]> symmetries;
 
+	/**
+	 * Whether this data has passed validation in {@link #trust()}, and none of its arrays has been set or handed out
+	 * since. Solvers only skip validating trusted data.
+	 */
+	private boolean trusted;
+
 	public IsohedralTilingSolver2Data(int numEdges) {
 		this.numEdges = numEdges;
 	}
@@ -83,54 +93,73 @@ public class IsohedralTilingSolver2Data {
 
 	public void setDesiredVertexWeight(int desiredVertexWeight) {
 		this.desiredVertexWeight = desiredVertexWeight;
+		trusted = false;
 	}
 
 	public int[] getEdgeRightNeighbors() {
+		// The caller may change the array in place
+		trusted = false;
 		return edgeRightNeighbors;
 	}
 
 	public void setEdgeRightNeighbors(int[] edgeRightNeighbors) {
 		this.edgeRightNeighbors = edgeRightNeighbors;
+		trusted = false;
 	}
 
 	public int[] getEdgeLeftNeighbors() {
+		// The caller may change the array in place
+		trusted = false;
 		return edgeLeftNeighbors;
 	}
 
 	public void setEdgeLeftNeighbors(int[] edgeLeftNeighbors) {
 		this.edgeLeftNeighbors = edgeLeftNeighbors;
+		trusted = false;
 	}
 
 	public int[] getEdgeMirrors() {
+		// The caller may change the array in place
+		trusted = false;
 		return edgeMirrors;
 	}
 
 	public void setEdgeMirrors(int[] edgeMirrors) {
 		this.edgeMirrors = edgeMirrors;
+		trusted = false;
 	}
 
 	public int[] getLeftVertexWeights() {
+		// The caller may change the array in place
+		trusted = false;
 		return leftVertexWeights;
 	}
 
 	public void setLeftVertexWeights(int[] leftVertexWeights) {
 		this.leftVertexWeights = leftVertexWeights;
+		trusted = false;
 	}
 
 	public int[] getEdgeTypes() {
+		// The caller may change the array in place
+		trusted = false;
 		return edgeTypes;
 	}
 
 	public void setEdgeTypes(int[] edgeTypes) {
 		this.edgeTypes = edgeTypes;
+		trusted = false;
 	}
 
 	public int[] getMatchTypes() {
+		// The caller may change the array in place
+		trusted = false;
 		return matchTypes;
 	}
 
 	public void setMatchTypes(int[] matchTypes) {
 		this.matchTypes = matchTypes;
+		trusted = false;
 	}
 
 	/**
@@ -139,6 +168,7 @@ public class IsohedralTilingSolver2Data {
 	public void setEdgeTypeSimple() {
 		this.edgeTypes = new int[numEdges];
 		this.matchTypes = new int[numEdges];
+		trusted = false;
 	}
 
 	public boolean getConePointsAllowed() {
@@ -158,9 +188,33 @@ public class IsohedralTilingSolver2Data {
 	}
 
 	/**
-	 * Checks given vertex data for the necessary consistency.
+	 * Validates the data and marks it as trusted, so that solvers created for it or reset to it do not validate it
+	 * again. The data stays trusted until one of its arrays is set, or handed out by a getter.
+	 * Meant for builders that own the arrays of the data they build, like
+	 * {@link isosolver2.demo.IsohedralTilingSolver2DataBuilder}: arrays still held elsewhere could be changed unnoticed.
+	 *
+	 * @throws IllegalArgumentException If the data is inconsistent
+	 */
+	public void trust() {
+		validate();
+		trusted = true;
+	}
+
+	/**
+	 * Validates the data unless it is trusted. Called by solvers whenever they take on the data.
+	 */
+	void validateUnlessTrusted() {
+		if (!trusted) {
+			validate();
+		}
+	}
+
+	/**
+	 * Checks given vertex data for the necessary consistency, in time O(numEdges log numEdges).
+	 *
+	 * @throws IllegalArgumentException If the data is inconsistent
 	 */
-	void validate() {
+	public void validate() {
 		if (numEdges < 0) {
 			throw new IllegalArgumentException("Number of edges must be nonnegative");
 		}
@@ -243,18 +297,66 @@ public class IsohedralTilingSolver2Data {
 				throw new IllegalArgumentException("Mirror neighbor inconsistency: right neighbor of mirror of edge " + i + " is not mirror of left neighbor of edge " + i);
 			}
 		}
-		for (int i = 0; i < numEdges; ++i) {
-			for (int j = 0; j < numEdges; ++j) {
-				if (matchTypes[i] == edgeTypes[j] && matchTypes[j] != edgeTypes[i]) {
-					throw new IllegalArgumentException("Match inconsistency: edges " + i + " and " + j + " do not consistently match");
+		validateMatches();
+	}
+
+	/**
+	 * Checks that edges matching each other do so consistently, that is, for all edges i and j such that j has the match
+	 * type of i, i has the match type of j and the mirror of j has the match type of the mirror of i.
+	 * Reports the first offending pair (i, j) in lexicographic order.
+	 * <p>
+	 * All edges of one edge type must agree in their match type and in the edge type of their mirrors for this to hold,
+	 * so it suffices to compare each edge i with the first edge of the type it matches, and, if those agree, to look up
+	 * the first edge of that type that disagrees with the first one. The edges are indexed by edge type by sorting.
+	 */
+	private void validateMatches() {
+		// Entry k holds edge type and edge of the k-th edge in order of edge type, then edge
+		long[] typeIndex = new long[numEdges];
+		for (int j = 0; j < numEdges; ++j) {
+			typeIndex[j] = typeIndexKey(edgeTypes[j], j);
+		}
+		Arrays.sort(typeIndex);
+		// firstDisagreeing[k] = First edge of the type starting at index k that disagrees with the first edge of the type
+		int[] firstDisagreeing = new int[numEdges];
+		for (int start = 0, end; start < numEdges; start = end) {
+			int first = (int) typeIndex[start];
+			int firstMatchType = matchTypes[first];
+			int firstMirrorType = edgeTypes[edgeMirrors[first]];
+			firstDisagreeing[start] = -1;
+			for (end = start + 1; end < numEdges && typeIndex[end] >>> 32 == typeIndex[start] >>> 32; ++end) {
+				int j = (int) typeIndex[end];
+				if (firstDisagreeing[start] == -1 && (matchTypes[j] != firstMatchType || edgeTypes[edgeMirrors[j]] != firstMirrorType)) {
+					firstDisagreeing[start] = j;
 				}
-				if (matchTypes[i] == edgeTypes[j] && matchTypes[edgeMirrors[i]] != edgeTypes[edgeMirrors[j]]) {
-					throw new IllegalArgumentException("Match inconsistency: edges " + i + " and " + j + " match but not their mirrors");
+			}
+		}
+		for (int i = 0; i < numEdges; ++i) {
+			int start = Arrays.binarySearch(typeIndex, typeIndexKey(matchTypes[i], 0));
+			if (start < 0) {
+				start = -start - 1;
+			}
+			if (start == numEdges || (int) (typeIndex[start] >>> 32) != matchTypes[i]) {
+				// No edge matches edge i
+				continue;
+			}
+			int j = (int) typeIndex[start];
+			if (matchTypes[j] == edgeTypes[i] && edgeTypes[edgeMirrors[j]] == matchTypes[edgeMirrors[i]]) {
+				j = firstDisagreeing[start];
+				if (j == -1) {
+					continue;
 				}
 			}
+			if (matchTypes[j] != edgeTypes[i]) {
+				throw new IllegalArgumentException("Match inconsistency: edges " + i + " and " + j + " do not consistently match");
+			}
+			throw new IllegalArgumentException("Match inconsistency: edges " + i + " and " + j + " match but not their mirrors");
 		}
 	}
 
+	private static long typeIndexKey(int type, int edge) {
+		return (long) type << 32 | edge;
+	}
+
 	boolean isSolutionConnected(int[] solution) {
 		boolean[] traversed = new boolean[numEdges];
 		// Stupid O(numEdges^2) algorithm, but it doesn't hog any stack
@@ -421,6 +523,31 @@ public class IsohedralTilingSolver2Data {
 		return newSolution;
 	}
 
+	/**
+	 * Computes a 64-bit hash of all the data that affects the solutions, which stays the same across JVM runs.
+	 * Used to check that a saved search position belongs to this data.
+	 */
+	public long fingerprint() {
+		long hash = FINGERPRINT_OFFSET;
+		hash = fingerprintStep(hash, numEdges);
+		hash = fingerprintStep(hash, desiredVertexWeight);
+		hash = fingerprintStep(hash, conePointsAllowed ? 1 : 0);
+		hash = fingerprintStep(hash, ensureConnectivity ? 1 : 0);
+		for (int[] array : new int[][]{edgeRightNeighbors, edgeLeftNeighbors, edgeMirrors, leftVertexWeights, edgeTypes, matchTypes}) {
+			for (int entry : array) {
+				hash = fingerprintStep(hash, entry);
+			}
+		}
+		return hash;
+	}
+
+	private static long fingerprintStep(long hash, int value) {
+		for (int shift = 0; shift < 32; shift += 8) {
+			hash = (hash ^ ((value >>> shift) & 0xff)) * FINGERPRINT_PRIME;
+		}
+		return hash;
+	}
+
 	public void printDebugInfo() {
 		System.out.println("Tiling data info:");
 		System.out.println("Number of edges: " + numEdges);
@@ -0,0 +1,329 @@
+package isosolver2;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Compact store for large numbers of solutions with the same number of edges.
+ * A solution is stored as one entry per glued pair of edges: going through the edges in order, every edge that is not
+ * yet known to be glued stores the edge it is glued to, which is the edge itself or a later edge. Each entry takes
+ * ceil(log2 numEdges) bits, and all entries are packed into one bit stream, kept in chunks on or off the heap. The first
+ * chunk starts small and doubles in size until it is full-sized, after which fixed-size chunks are added, so that small
+ * stores stay small and large ones never copy more than one chunk.
+ * Since solutions with more self-gluings take up more entries, the position of every 32nd solution is kept in an index,
+ * so that random access only has to skip over at most 31 solutions.
+ * <p>
+ * Can be passed to {@link IsohedralTilingSolver2#solve(SolutionConsumer)} directly to collect all solutions.
+ */
+public class PackedSolutionStore implements SolutionConsumer, Iterable<int[]> {
+
+	// Every INDEX_INTERVAL-th solution has its bit position in the index
+	private static final int INDEX_INTERVAL_BITS = 5;
+	private static final int INDEX_INTERVAL = 1 << INDEX_INTERVAL_BITS;
+
+	// Each chunk holds 2^CHUNK_BITS longs (512 KiB), except for the first one while it is growing
+	private static final int CHUNK_BITS = 16;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int MIN_CHUNK_SIZE = 16;
+
+	private final int numEdges;
+	private final int bitsPerEntry;
+	private final boolean offHeap;
+
+	private final List<LongBuffer> chunks = new ArrayList<>();
+	private long[] index = new long[16];
+	private long numSolutions;
+	private long numBits;
+
+	// Scratch array for adding from a SolutionView
+	private final int[] buffer;
+
+	/**
+	 * Creates an empty store on the heap.
+	 *
+	 * @param numEdges The number of edges of every solution to be stored
+	 */
+	public PackedSolutionStore(int numEdges) {
+		this(numEdges, false);
+	}
+
+	/**
+	 * Creates an empty store.
+	 *
+	 * @param numEdges The number of edges of every solution to be stored
+	 * @param offHeap Whether to keep the solutions in direct buffers outside of the Java heap
+	 */
+	public PackedSolutionStore(int numEdges, boolean offHeap) {
+		if (numEdges < 0) {
+			throw new IllegalArgumentException("Number of edges must be nonnegative");
+		}
+		this.numEdges = numEdges;
+		this.bitsPerEntry = numEdges <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(numEdges - 1);
+		this.offHeap = offHeap;
+		this.buffer = new int[numEdges];
+	}
+
+	public int getNumEdges() {
+		return numEdges;
+	}
+
+	/**
+	 * @return The number of stored solutions
+	 */
+	public long size() {
+		return numSolutions;
+	}
+
+	/**
+	 * @return The number of bytes taken up by the stored solutions and the index
+	 */
+	public long sizeInBytes() {
+		long numWords = 0;
+		for (LongBuffer chunk : chunks) {
+			numWords += chunk.capacity();
+		}
+		return (numWords + index.length) * Long.BYTES;
+	}
+
+	/**
+	 * Adds a solution at the end of the store.
+	 *
+	 * @param solution A solution as returned by the solver, with solution[i] = the edge glued to edge i
+	 */
+	public void add(int[] solution) {
+		if (solution.length != numEdges) {
+			throw new IllegalArgumentException("Solution does not have length equal to numEdges");
+		}
+		if ((numSolutions & (INDEX_INTERVAL - 1)) == 0) {
+			addIndexEntry(numSolutions, numBits);
+		}
+		for (int edge = 0; edge < numEdges; ++edge) {
+			int gluedEdge = solution[edge];
+			if (gluedEdge < 0 || gluedEdge >= numEdges || solution[gluedEdge] != edge) {
+				throw new IllegalArgumentException("Solution does not glue edge " + edge + " to a valid edge");
+			}
+			if (gluedEdge >= edge) {
+				writeEntry(gluedEdge);
+			}
+		}
+		++numSolutions;
+	}
+
+	/**
+	 * Adds the solution to the store.
+	 *
+	 * @return Always true, to collect all solutions
+	 */
+	@Override
+	public boolean accept(SolutionView solution) {
+		solution.copyTo(buffer);
+		add(buffer);
+		return true;
+	}
+
+	/**
+	 * @return A new copy of the solution with the given index
+	 */
+	public int[] get(long solutionIndex) {
+		int[] solution = new int[numEdges];
+		get(solutionIndex, solution);
+		return solution;
+	}
+
+	/**
+	 * Decodes the solution with the given index into the given array, which must have room for numEdges entries.
+	 */
+	public void get(long solutionIndex, int[] destination) {
+		if (solutionIndex < 0 || solutionIndex >= numSolutions) {
+			throw new IndexOutOfBoundsException("Solution index " + solutionIndex + " out of range for " + numSolutions + " solutions");
+		}
+		long bitPosition = index[(int) (solutionIndex >>> INDEX_INTERVAL_BITS)];
+		for (long skipped = solutionIndex & ~(INDEX_INTERVAL - 1); skipped < solutionIndex; ++skipped) {
+			bitPosition = decode(bitPosition, destination);
+		}
+		decode(bitPosition, destination);
+	}
+
+	/**
+	 * Iterates over the stored solutions in the order they were added, decoding each into a new array.
+	 */
+	@Override
+	public Iterator<int[]> iterator() {
+		return new Iterator<int[]>() {
+			private long solutionIndex;
+			private long bitPosition;
+
+			@Override
+			public boolean hasNext() {
+				return solutionIndex < numSolutions;
+			}
+
+			@Override
+			public int[] next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				int[] solution = new int[numEdges];
+				bitPosition = decode(bitPosition, solution);
+				++solutionIndex;
+				return solution;
+			}
+		};
+	}
+
+	/**
+	 * Removes all solutions, keeping the memory already allocated.
+	 */
+	public void clear() {
+		numSolutions = 0;
+		numBits = 0;
+	}
+
+	/**
+	 * Writes the number of edges and the packed solutions, to be read back by {@link #readFrom}.
+	 */
+	void writeTo(DataOutputStream out) throws IOException {
+		out.writeInt(numEdges);
+		out.writeLong(numSolutions);
+		out.writeLong(numBits);
+		for (long wordIndex = 0; wordIndex < (numBits + 63) >>> 6; ++wordIndex) {
+			out.writeLong(word(wordIndex));
+		}
+	}
+
+	/**
+	 * Reads a store written by {@link #writeTo} into a new store on the heap.
+	 */
+	static PackedSolutionStore readFrom(DataInputStream in) throws IOException {
+		PackedSolutionStore store = new PackedSolutionStore(in.readInt());
+		long storedSolutions = in.readLong();
+		long storedBits = in.readLong();
+		if (storedSolutions < 0 || storedBits < 0 || store.bitsPerEntry == 0 && storedBits != 0) {
+			throw new IOException("Corrupt packed solutions");
+		}
+		long numWords = (storedBits + 63) >>> 6;
+		// Room is made as the words are read, so that a corrupt length runs out of input rather than memory.
+		// One more word than needed is kept, as after every add
+		store.ensureWords(1);
+		for (long wordIndex = 0; wordIndex < numWords; ++wordIndex) {
+			store.ensureWords(wordIndex + 2);
+			store.setWord(wordIndex, in.readLong());
+		}
+		// The index is rebuilt by going through the solutions, which also checks that they fill the stored bits exactly
+		int[] solution = new int[store.numEdges];
+		store.numBits = storedBits;
+		long bitPosition = 0;
+		for (long solutionIndex = 0; solutionIndex < storedSolutions; ++solutionIndex) {
+			if (bitPosition > storedBits) {
+				throw new IOException("Corrupt packed solutions");
+			}
+			if ((solutionIndex & (INDEX_INTERVAL - 1)) == 0) {
+				store.addIndexEntry(solutionIndex, bitPosition);
+			}
+			bitPosition = store.decode(bitPosition, solution);
+		}
+		if (bitPosition != storedBits) {
+			throw new IOException("Corrupt packed solutions");
+		}
+		store.numSolutions = storedSolutions;
+		return store;
+	}
+
+	/**
+	 * Decodes the solution starting at the given bit position.
+	 *
+	 * @return The bit position of the next solution
+	 */
+	private long decode(long bitPosition, int[] destination) {
+		Arrays.fill(destination, 0, numEdges, -1);
+		for (int edge = 0; edge < numEdges; ++edge) {
+			if (destination[edge] == -1) {
+				int gluedEdge = readEntry(bitPosition);
+				bitPosition += bitsPerEntry;
+				destination[edge] = gluedEdge;
+				destination[gluedEdge] = edge;
+			}
+		}
+		return bitPosition;
+	}
+
+	private void writeEntry(int value) {
+		if (bitsPerEntry == 0) {
+			return;
+		}
+		long wordIndex = numBits >>> 6;
+		int bitOffset = (int) (numBits & 63);
+		// Make sure the word after this one exists as well, for entries crossing a word boundary
+		ensureWords(wordIndex + 2);
+		// Bits past the end of the stream are always zero within the current word, but may be left over from before clear()
+		// in later words, so a new word is overwritten rather than combined
+		long bits = bitOffset == 0 ? 0 : word(wordIndex);
+		setWord(wordIndex, bits | (long) value << bitOffset);
+		if (bitOffset + bitsPerEntry > 64) {
+			setWord(wordIndex + 1, (long) value >>> (64 - bitOffset));
+		}
+		numBits += bitsPerEntry;
+	}
+
+	private void addIndexEntry(long solutionIndex, long bitPosition) {
+		long indexPosition = solutionIndex >>> INDEX_INTERVAL_BITS;
+		if (indexPosition == index.length) {
+			index = Arrays.copyOf(index, 2 * index.length);
+		}
+		index[(int) indexPosition] = bitPosition;
+	}
+
+	private void ensureWords(long numWords) {
+		if (chunks.size() <= 1) {
+			int firstCapacity = chunks.isEmpty() ? 0 : chunks.get(0).capacity();
+			if (numWords > firstCapacity && firstCapacity < CHUNK_SIZE) {
+				int capacity = (int) Math.min(CHUNK_SIZE, Math.max(numWords, Math.max(MIN_CHUNK_SIZE, 2L * firstCapacity)));
+				LongBuffer chunk = allocateChunk(capacity);
+				for (int i = 0; i < firstCapacity; ++i) {
+					chunk.put(i, chunks.get(0).get(i));
+				}
+				if (chunks.isEmpty()) {
+					chunks.add(chunk);
+				} else {
+					chunks.set(0, chunk);
+				}
+			}
+		}
+		while (numWords > (long) chunks.size() << CHUNK_BITS) {
+			chunks.add(allocateChunk(CHUNK_SIZE));
+		}
+	}
+
+	private LongBuffer allocateChunk(int capacity) {
+		return offHeap ? ByteBuffer.allocateDirect(capacity * Long.BYTES).asLongBuffer() : LongBuffer.allocate(capacity);
+	}
+
+	private int readEntry(long bitPosition) {
+		if (bitsPerEntry == 0) {
+			return 0;
+		}
+		long wordIndex = bitPosition >>> 6;
+		int bitOffset = (int) (bitPosition & 63);
+		long bits = word(wordIndex) >>> bitOffset;
+		if (bitOffset + bitsPerEntry > 64) {
+			bits |= word(wordIndex + 1) << (64 - bitOffset);
+		}
+		return (int) (bits & ((1L << bitsPerEntry) - 1));
+	}
+
+	private long word(long wordIndex) {
+		return chunks.get((int) (wordIndex >>> CHUNK_BITS)).get((int) (wordIndex & (CHUNK_SIZE - 1)));
+	}
+
+	private void setWord(long wordIndex, long bits) {
+		chunks.get((int) (wordIndex >>> CHUNK_BITS)).put((int) (wordIndex & (CHUNK_SIZE - 1)), bits);
+	}
+}
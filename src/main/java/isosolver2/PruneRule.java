@@ -0,0 +1,29 @@
+package isosolver2;
+
+/**
+ * The rules by which {@link IsohedralTilingSolver2} cuts off branches of its search, see
+ * {@link IsohedralTilingSolver2#getPrunedNodes(PruneRule)}.
+ */
+public enum PruneRule {
+	/**
+	 * A vertex became overweight, or was closed with a weight other than the desired vertex weight (or, with cone points,
+	 * a divisor of it).
+	 */
+	VERTEX_WEIGHT,
+	/**
+	 * The open vertices weigh too much in total to be closed within the number of vertices the open edges can still form.
+	 */
+	VERTEX_COUNT,
+	/**
+	 * The open edges cannot be paired up by type.
+	 */
+	EDGE_TYPES,
+	/**
+	 * A component of the gluing was closed off from the rest.
+	 */
+	CONNECTIVITY,
+	/**
+	 * The gluing cannot be completed to a solution that is canonical under the symmetries of the edge data.
+	 */
+	SYMMETRY
+}
@@ -0,0 +1,359 @@
+package isosolver2;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent cache of solver results, kept as one file per result in a directory, so that repeated runs over the same
+ * inputs do not have to solve them again.
+ * <p>
+ * Results are looked up by a key, which is an arbitrary byte string describing everything that affects the result.
+ * Each result is stored in a file named after the SHA-256 hash of its key, and the key itself is stored in the file as
+ * well, so a hash collision is treated as a miss. The total size of the files is bounded; when it is exceeded, the least
+ * recently used results are deleted. The order of use is kept in the file modification times, so it carries over to
+ * later runs.
+ * <p>
+ * Entries that cannot be read, for example because they were written by another version of this class, are deleted
+ * and count as misses. Entries are written to a temporary file first and then moved into place, so that a crash never
+ * leaves a partial entry behind; temporary files left by a crash are deleted when the cache is opened again.
+ * <p>
+ * All methods are thread-safe, and entries are read and written without holding a lock, so that threads only wait for
+ * each other while updating the order of use. A cache directory should not be used by more than one process at a time.
+ */
+public class ResultCache {
+
+	private static final int ENTRY_MAGIC = 0x49535243;
+	private static final int ENTRY_VERSION = 1;
+	private static final String ENTRY_SUFFIX = ".result";
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private final Path directory;
+	private final long maxBytes;
+
+	// Maps file names to file sizes, least recently used first
+	private final LinkedHashMap<String, Long> entrySizes = new LinkedHashMap<>(16, 0.75f, true);
+	private long totalBytes;
+
+	private long numHits;
+	private long numMisses;
+
+	/**
+	 * A cached result.
+	 */
+	public static class Entry {
+		private final long solutionCount;
+		private final boolean hasSolution;
+		private final long stepsTaken;
+		private final PackedSolutionStore solutions;
+
+		/**
+		 * @param solutionCount The number of solutions, or -1 if only hasSolution is known
+		 * @param hasSolution Whether there is any solution
+		 * @param stepsTaken The number of steps the solver took to find the result
+		 * @param solutions All solutions, or null if they are not to be cached
+		 */
+		public Entry(long solutionCount, boolean hasSolution, long stepsTaken, PackedSolutionStore solutions) {
+			if (solutionCount < -1 || (solutionCount >= 0 && hasSolution != (solutionCount > 0))) {
+				throw new IllegalArgumentException("Solution count does not agree with hasSolution");
+			}
+			if (solutions != null && solutions.size() != solutionCount) {
+				throw new IllegalArgumentException("Number of solutions does not agree with solution count");
+			}
+			this.solutionCount = solutionCount;
+			this.hasSolution = hasSolution;
+			this.stepsTaken = stepsTaken;
+			this.solutions = solutions;
+		}
+
+		/**
+		 * @return The number of solutions, or -1 if it is not known
+		 */
+		public long getSolutionCount() {
+			return solutionCount;
+		}
+
+		public boolean hasSolution() {
+			return hasSolution;
+		}
+
+		public long getStepsTaken() {
+			return stepsTaken;
+		}
+
+		/**
+		 * @return All solutions, or null if they were not cached
+		 */
+		public PackedSolutionStore getSolutions() {
+			return solutions;
+		}
+	}
+
+	/**
+	 * Opens a cache directory, creating it if needed. Results already in the directory are kept, except for the least
+	 * recently used ones if they exceed the size bound. Temporary files of results that were never completed are deleted.
+	 *
+	 * @param directory The directory holding the cached results
+	 * @param maxBytes The maximum total size of the cached results
+	 */
+	public ResultCache(Path directory, long maxBytes) throws IOException {
+		if (maxBytes <= 0) {
+			throw new IllegalArgumentException("Maximum cache size must be positive");
+		}
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		Files.createDirectories(directory);
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + ENTRY_SUFFIX + "*" + TEMP_SUFFIX)) {
+			for (Path file : stream) {
+				Files.deleteIfExists(file);
+			}
+		}
+		List<Path> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + ENTRY_SUFFIX)) {
+			for (Path file : stream) {
+				files.add(file);
+			}
+		}
+		Map<Path, FileTime> lastUse = new HashMap<>();
+		for (Path file : files) {
+			lastUse.put(file, Files.getLastModifiedTime(file));
+		}
+		files.sort(Comparator.comparing(lastUse::get));
+		for (Path file : files) {
+			long size = Files.size(file);
+			entrySizes.put(file.getFileName().toString(), size);
+			totalBytes += size;
+		}
+		evict();
+	}
+
+	/**
+	 * Looks up the result for a key.
+	 *
+	 * @return The cached result, or null if there is none
+	 */
+	public Entry get(byte[] key) {
+		String fileName = fileName(key);
+		synchronized (this) {
+			if (!entrySizes.containsKey(fileName)) {
+				++numMisses;
+				return null;
+			}
+		}
+		Path file = directory.resolve(fileName);
+		Entry entry;
+		boolean unreadable = false;
+		try {
+			entry = readEntry(file, key);
+		} catch (NoSuchFileException e) {
+			// Evicted by another thread in the meantime
+			entry = null;
+		} catch (IOException | RuntimeException e) {
+			entry = null;
+			unreadable = true;
+		}
+		if (unreadable) {
+			try {
+				Files.deleteIfExists(file);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Could not delete unreadable cached result " + file, e);
+			}
+		}
+		synchronized (this) {
+			if (entry == null) {
+				++numMisses;
+				if (unreadable || Files.notExists(file)) {
+					Long size = entrySizes.remove(fileName);
+					totalBytes -= size == null ? 0 : size;
+				}
+				return null;
+			}
+			++numHits;
+			// Looking the entry up moves it to the most recently used end
+			entrySizes.get(fileName);
+		}
+		try {
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (NoSuchFileException e) {
+			// Evicted by another thread in the meantime, after it was read
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not update cached result " + file, e);
+		}
+		return entry;
+	}
+
+	/**
+	 * Stores the result for a key, replacing any earlier result, and deletes the least recently used results if the size
+	 * bound is exceeded. A result that is larger than the bound on its own is not stored.
+	 */
+	public void put(byte[] key, Entry entry) {
+		String fileName = fileName(key);
+		Path file = directory.resolve(fileName);
+		Path tempFile = null;
+		try {
+			// Each writer has a temporary file of its own, since the same key may be stored by several threads at once
+			tempFile = Files.createTempFile(directory, fileName, TEMP_SUFFIX);
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+				out.writeInt(ENTRY_MAGIC);
+				out.writeInt(ENTRY_VERSION);
+				out.writeInt(key.length);
+				out.write(key);
+				out.writeLong(entry.solutionCount);
+				out.writeBoolean(entry.hasSolution);
+				out.writeLong(entry.stepsTaken);
+				out.writeBoolean(entry.solutions != null);
+				if (entry.solutions != null) {
+					entry.solutions.writeTo(out);
+				}
+			}
+			long size = Files.size(tempFile);
+			if (size > maxBytes) {
+				Files.delete(tempFile);
+				return;
+			}
+			synchronized (this) {
+				// Moved while holding the lock, so that eviction cannot delete the file before it is counted
+				Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				Long oldSize = entrySizes.put(fileName, size);
+				totalBytes += size - (oldSize == null ? 0 : oldSize);
+				evict();
+			}
+		} catch (IOException e) {
+			if (tempFile != null) {
+				try {
+					Files.deleteIfExists(tempFile);
+				} catch (IOException suppressed) {
+					e.addSuppressed(suppressed);
+				}
+			}
+			throw new UncheckedIOException("Could not write cached result " + file, e);
+		}
+	}
+
+	/**
+	 * @return The number of lookups that found a result
+	 */
+	public synchronized long getNumHits() {
+		return numHits;
+	}
+
+	/**
+	 * @return The number of lookups that found no result
+	 */
+	public synchronized long getNumMisses() {
+		return numMisses;
+	}
+
+	/**
+	 * @return The number of cached results
+	 */
+	public synchronized int size() {
+		return entrySizes.size();
+	}
+
+	/**
+	 * @return The total size of the cached results in bytes
+	 */
+	public synchronized long sizeInBytes() {
+		return totalBytes;
+	}
+
+	/**
+	 * Builds the key for the results of solving the given edge data. Every field that affects the solutions is part of
+	 * the key, including the edge and match types and the solver flags.
+	 * The key follows the numbering of the edges as given, since cached solutions are stored in that numbering. Edge data
+	 * describing the same polyform with its edges numbered differently, e.g. starting at another vertex, gets a different
+	 * key and misses the cache; callers that want such inputs to share results should build their own key from a
+	 * normalized form, like {@link isosolver.demo.TilingSweep} does.
+	 * Keys built by other callers should likewise start with a name for the kind of input, to keep them apart.
+	 */
+	public static byte[] key(IsohedralTilingSolver2Data data) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeUTF(IsohedralTilingSolver2Data.class.getName());
+			out.writeInt(data.numEdges);
+			out.writeInt(data.desiredVertexWeight);
+			out.writeBoolean(data.conePointsAllowed);
+			out.writeBoolean(data.ensureConnectivity);
+			for (int[] array : new int[][]{data.edgeRightNeighbors, data.edgeLeftNeighbors, data.edgeMirrors, data.leftVertexWeights, data.edgeTypes, data.matchTypes}) {
+				for (int entry : array) {
+					out.writeInt(entry);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private void evict() {
+		Iterator<Map.Entry<String, Long>> iterator = entrySizes.entrySet().iterator();
+		while (totalBytes > maxBytes && iterator.hasNext()) {
+			Map.Entry<String, Long> eldest = iterator.next();
+			try {
+				Files.deleteIfExists(directory.resolve(eldest.getKey()));
+			} catch (IOException e) {
+				throw new UncheckedIOException("Could not delete cached result " + eldest.getKey(), e);
+			}
+			totalBytes -= eldest.getValue();
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * @return The entry in the file, or null if the file belongs to a different key
+	 * @throws IOException If the file is not a complete entry of the current version
+	 */
+	private static Entry readEntry(Path file, byte[] key) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != ENTRY_MAGIC || in.readInt() != ENTRY_VERSION) {
+				throw new IOException("Not a cached result");
+			}
+			byte[] storedKey = new byte[in.readInt()];
+			in.readFully(storedKey);
+			if (!Arrays.equals(storedKey, key)) {
+				return null;
+			}
+			long solutionCount = in.readLong();
+			boolean hasSolution = in.readBoolean();
+			long stepsTaken = in.readLong();
+			PackedSolutionStore solutions = in.readBoolean() ? PackedSolutionStore.readFrom(in) : null;
+			return new Entry(solutionCount, hasSolution, stepsTaken, solutions);
+		}
+	}
+
+	private static String fileName(byte[] key) {
+		byte[] hash;
+		try {
+			hash = MessageDigest.getInstance("SHA-256").digest(key);
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+		StringBuilder name = new StringBuilder(2 * hash.length + ENTRY_SUFFIX.length());
+		for (byte b : hash) {
+			name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return name.append(ENTRY_SUFFIX).toString();
+	}
+}
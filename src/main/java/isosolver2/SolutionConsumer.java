@@ -0,0 +1,15 @@
+package isosolver2;
+
+/**
+ * Receives the solutions of {@link IsohedralTilingSolver2#solve(SolutionConsumer)} one at a time, as they are found.
+ */
+public interface SolutionConsumer {
+	/**
+	 * Called once for every solution.
+	 *
+	 * @param solution A view of the solution, which is only valid during this call. Copy it with
+	 * {@link SolutionView#toArray()} to keep it.
+	 * @return True to continue the search, false to stop it
+	 */
+	boolean accept(SolutionView solution);
+}
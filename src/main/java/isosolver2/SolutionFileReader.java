@@ -0,0 +1,171 @@
+package isosolver2;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a solution file written by {@link SolutionFileWriter}. The solutions are memory-mapped, so solution i can be
+ * read without loading the rest of the file.
+ * <p>
+ * The file may still be written to while it is open. The reader sees the solutions that were complete when it was
+ * opened, or when {@link #refresh()} was last called.
+ */
+public class SolutionFileReader implements Closeable {
+
+	// The largest size of a single mapped segment, which is a whole number of records
+	private static final int MAX_SEGMENT_SIZE = 1 << 30;
+
+	private final Path file;
+	private final FileChannel channel;
+	private final int numEdges;
+	private final int bytesPerEdge;
+	private final long dataFingerprint;
+	private final int recordSize;
+	private final long recordsPerSegment;
+	private final List<MappedByteBuffer> segments = new ArrayList<>();
+	private final ByteBuffer countBuffer = ByteBuffer.allocate(Long.BYTES);
+	private long numSolutions;
+
+	/**
+	 * Opens a solution file and maps the solutions written so far.
+	 *
+	 * @throws IOException If the file could not be read or is not a solution file
+	 */
+	public SolutionFileReader(Path file) throws IOException {
+		this.file = file;
+		this.channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(SolutionFileWriter.HEADER_SIZE);
+			while (header.hasRemaining()) {
+				if (channel.read(header, header.position()) < 0) {
+					throw new IOException("Not a solution file: " + file);
+				}
+			}
+			header.flip();
+			if (header.getInt() != SolutionFileWriter.MAGIC) {
+				throw new IOException("Not a solution file: " + file);
+			}
+			int version = header.getInt();
+			if (version != SolutionFileWriter.VERSION) {
+				throw new IOException("Unsupported solution file version " + version + ": " + file);
+			}
+			numEdges = header.getInt();
+			bytesPerEdge = header.getInt();
+			if (numEdges < 0 || bytesPerEdge != SolutionFileWriter.bytesPerEdge(numEdges)) {
+				throw new IOException("Corrupt solution file header: " + file);
+			}
+			dataFingerprint = header.getLong();
+			recordSize = numEdges * bytesPerEdge;
+			recordsPerSegment = recordSize == 0 ? Long.MAX_VALUE : Math.max(MAX_SEGMENT_SIZE / recordSize, 1);
+			refresh();
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	public int getNumEdges() {
+		return numEdges;
+	}
+
+	/**
+	 * @return The fingerprint of the edge data the solutions belong to
+	 */
+	public long getDataFingerprint() {
+		return dataFingerprint;
+	}
+
+	/**
+	 * @return Whether the solutions in this file belong to the given edge data
+	 */
+	public boolean matches(IsohedralTilingSolver2Data data) {
+		return data.getNumEdges() == numEdges && data.fingerprint() == dataFingerprint;
+	}
+
+	/**
+	 * @return The number of solutions visible to this reader
+	 */
+	public long size() {
+		return numSolutions;
+	}
+
+	/**
+	 * Rereads the solution count from the header and maps any solutions added since the last refresh.
+	 *
+	 * @return The new number of solutions
+	 */
+	public long refresh() throws IOException {
+		countBuffer.clear();
+		while (countBuffer.hasRemaining()) {
+			if (channel.read(countBuffer, SolutionFileWriter.COUNT_OFFSET + countBuffer.position()) < 0) {
+				throw new IOException("Corrupt solution file header: " + file);
+			}
+		}
+		long count = countBuffer.getLong(0);
+		if (count < numSolutions) {
+			throw new IOException("Solution file was truncated: " + file);
+		}
+		if (recordSize > 0) {
+			// The last segment may have been mapped while it was only partly written, so it is mapped again
+			if (!segments.isEmpty() && segments.get(segments.size() - 1).capacity() < recordsPerSegment * recordSize) {
+				segments.remove(segments.size() - 1);
+			}
+			while ((long) segments.size() * recordsPerSegment < count) {
+				long firstRecord = segments.size() * recordsPerSegment;
+				long segmentRecords = Math.min(recordsPerSegment, count - firstRecord);
+				segments.add(channel.map(FileChannel.MapMode.READ_ONLY, SolutionFileWriter.HEADER_SIZE + firstRecord * recordSize, segmentRecords * recordSize));
+			}
+		}
+		numSolutions = count;
+		return numSolutions;
+	}
+
+	/**
+	 * @return A new copy of the solution with the given index
+	 */
+	public int[] get(long solutionIndex) {
+		int[] solution = new int[numEdges];
+		get(solutionIndex, solution);
+		return solution;
+	}
+
+	/**
+	 * Reads the solution with the given index into the given array, which must have room for numEdges entries.
+	 */
+	public void get(long solutionIndex, int[] destination) {
+		if (solutionIndex < 0 || solutionIndex >= numSolutions) {
+			throw new IndexOutOfBoundsException("Solution index " + solutionIndex + " out of range for " + numSolutions + " solutions");
+		}
+		if (recordSize == 0) {
+			return;
+		}
+		MappedByteBuffer segment = segments.get((int) (solutionIndex / recordsPerSegment));
+		int position = (int) (solutionIndex % recordsPerSegment) * recordSize;
+		for (int edge = 0; edge < numEdges; ++edge, position += bytesPerEdge) {
+			switch (bytesPerEdge) {
+				case 1:
+					destination[edge] = segment.get(position) & 0xFF;
+					break;
+				case 2:
+					destination[edge] = segment.getShort(position) & 0xFFFF;
+					break;
+				default:
+					destination[edge] = segment.getInt(position);
+					break;
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		segments.clear();
+		channel.close();
+	}
+}
@@ -0,0 +1,172 @@
+package isosolver2;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes solutions to a binary solution file, which can be read back with {@link SolutionFileReader}.
+ * <p>
+ * The file starts with a header of {@link #HEADER_SIZE} bytes: the magic number, the format version, the number of
+ * edges, the encoding (the number of bytes per edge), the {@link IsohedralTilingSolver2Data#fingerprint() fingerprint}
+ * of the edge data and the number of solutions. It is followed by one record per solution, holding the glued edge for
+ * every edge in order, each as an unsigned big-endian number of the given number of bytes. Records all have the same
+ * size, so solution i can be found without an index.
+ * <p>
+ * Solutions are buffered and written in blocks. After every block the solution count in the header is updated, so a
+ * reader running at the same time always sees a count of completely written solutions.
+ * <p>
+ * Can be passed to {@link IsohedralTilingSolver2#solve(SolutionConsumer)} directly to write all solutions.
+ */
+public class SolutionFileWriter implements SolutionConsumer, Closeable {
+
+	static final int MAGIC = 0x49534F4C;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 32;
+	static final int COUNT_OFFSET = 24;
+
+	private static final int BLOCK_SIZE = 1 << 16;
+
+	private final Path file;
+	private final FileChannel channel;
+	private final int numEdges;
+	private final int bytesPerEdge;
+	private final ByteBuffer block;
+	private final ByteBuffer countBuffer = ByteBuffer.allocate(Long.BYTES);
+	private long numSolutions;
+	private long numWrittenSolutions;
+
+	/**
+	 * Creates the solution file, replacing any existing file, and writes the header for an empty solution set.
+	 *
+	 * @param file The file to write to
+	 * @param data The edge data whose solutions will be written
+	 */
+	public SolutionFileWriter(Path file, IsohedralTilingSolver2Data data) throws IOException {
+		this.file = file;
+		this.numEdges = data.getNumEdges();
+		this.bytesPerEdge = bytesPerEdge(numEdges);
+		int recordSize = Math.max(numEdges * bytesPerEdge, 1);
+		this.block = ByteBuffer.allocate(Math.max(BLOCK_SIZE / recordSize, 1) * recordSize);
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.putInt(numEdges);
+		header.putInt(bytesPerEdge);
+		header.putLong(data.fingerprint());
+		header.putLong(0);
+		header.flip();
+		writeFully(header, 0);
+	}
+
+	/**
+	 * @return The number of solutions added so far, including those not yet flushed to the file
+	 */
+	public long size() {
+		return numSolutions;
+	}
+
+	/**
+	 * Appends a solution to the file.
+	 *
+	 * @param solution A solution as returned by the solver, with solution[i] = the edge glued to edge i
+	 */
+	public void add(int[] solution) throws IOException {
+		if (solution.length != numEdges) {
+			throw new IllegalArgumentException("Solution does not have length equal to numEdges");
+		}
+		if (block.remaining() < numEdges * bytesPerEdge) {
+			flush();
+		}
+		for (int gluedEdge : solution) {
+			putEdge(gluedEdge);
+		}
+		++numSolutions;
+	}
+
+	/**
+	 * Appends the solution to the file.
+	 *
+	 * @return Always true, to write all solutions
+	 * @throws UncheckedIOException If the file could not be written
+	 */
+	@Override
+	public boolean accept(SolutionView solution) {
+		try {
+			if (block.remaining() < numEdges * bytesPerEdge) {
+				flush();
+			}
+			for (int edge = 0; edge < numEdges; ++edge) {
+				putEdge(solution.get(edge));
+			}
+			++numSolutions;
+			return true;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not write solution file " + file, e);
+		}
+	}
+
+	/**
+	 * Writes all buffered solutions to the file and updates the solution count in the header.
+	 */
+	public void flush() throws IOException {
+		block.flip();
+		writeFully(block, HEADER_SIZE + numWrittenSolutions * numEdges * bytesPerEdge);
+		block.clear();
+		numWrittenSolutions = numSolutions;
+		countBuffer.clear();
+		countBuffer.putLong(numWrittenSolutions);
+		countBuffer.flip();
+		writeFully(countBuffer, COUNT_OFFSET);
+	}
+
+	/**
+	 * Flushes the remaining solutions and closes the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+
+	private void putEdge(int edge) {
+		switch (bytesPerEdge) {
+			case 1:
+				block.put((byte) edge);
+				break;
+			case 2:
+				block.putShort((short) edge);
+				break;
+			default:
+				block.putInt(edge);
+				break;
+		}
+	}
+
+	private void writeFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+
+	/**
+	 * @return The number of bytes needed to store an edge index, which is 1, 2 or 4
+	 */
+	static int bytesPerEdge(int numEdges) {
+		if (numEdges <= 1 << 8) {
+			return 1;
+		} else if (numEdges <= 1 << 16) {
+			return 2;
+		} else {
+			return 4;
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package isosolver2;
+
+import java.util.Arrays;
+
+/**
+ * Read-only view of the gluing the solver is currently at. Its contents change as the search goes on, so a view must
+ * not be used after the call it was passed to has returned.
+ */
+public final class SolutionView {
+	private final int[] solution;
+	private final int size;
+
+	/**
+	 * @param solution The gluing, of which only the first size entries are part of the view
+	 */
+	SolutionView(int[] solution, int size) {
+		this.solution = solution;
+		this.size = size;
+	}
+
+	/**
+	 * @return The number of edges
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return The edge that the given edge is glued to
+	 */
+	public int get(int edge) {
+		if (edge >= size) {
+			throw new IndexOutOfBoundsException("Edge " + edge + " out of range for " + size + " edges");
+		}
+		return solution[edge];
+	}
+
+	/**
+	 * Copies the gluing into the given array, which must have room for {@link #size()} entries.
+	 */
+	public void copyTo(int[] destination) {
+		System.arraycopy(solution, 0, destination, 0, size);
+	}
+
+	/**
+	 * @return A copy of the gluing, in the same format as the solutions returned by the solver
+	 */
+	public int[] toArray() {
+		return Arrays.copyOf(solution, size);
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+}
@@ -0,0 +1,36 @@
+package isosolver2.demo;
+
+import isosolver2.IsohedralTilingSolver2;
+import isosolver2.IsohedralTilingSolver2Data;
+
+/**
+ * Measures the search on a few instances with around 30 edges: the number of steps, the total time and the time per step.
+ * Compare total times when the pruning changes, since pruning cheap nodes raises the time per remaining step.
+ * Every instance is solved several times and the fastest run is reported.
+ */
+public class BranchSelectionBenchmark {
+	private static final int RUNS = 5;
+
+	public static void main(String[] args) {
+		benchmark("28 edges, weight 12", 12, new int[]{1, 2, 1, 3, 1, 1, 3, 2, 2, 1, 1, 2, 2, 3});
+		benchmark("30 edges, weight 12", 12, new int[]{1, 2, 1, 3, 1, 1, 3, 2, 1, 1, 2, 2, 1, 3, 1});
+		benchmark("32 edges, weight 6", 6, new int[]{1, 1, 2, 1, 1, 2, 1, 1, 1, 2, 1, 1, 1, 2, 1, 1});
+	}
+
+	private static void benchmark(String name, int vertexWeight, int[] vertexWeights) {
+		IsohedralTilingSolver2DataBuilder builder = new IsohedralTilingSolver2DataBuilder(vertexWeight, true);
+		builder.addEdgeCycle(vertexWeights);
+		IsohedralTilingSolver2Data data = builder.build();
+		long bestNanos = Long.MAX_VALUE;
+		long count = 0;
+		long steps = 0;
+		for (int run = 0; run < RUNS; ++run) {
+			IsohedralTilingSolver2 solver = new IsohedralTilingSolver2(data);
+			long start = System.nanoTime();
+			count = solver.countSolutions();
+			bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+			steps = solver.getStepsTaken();
+		}
+		System.out.printf("%s: %d solutions, %d steps, %d ms, %.1f ns/step%n", name, count, steps, bestNanos / 1000000, (double) bestNanos / steps);
+	}
+}
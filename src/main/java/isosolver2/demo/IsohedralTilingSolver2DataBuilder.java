@@ -77,6 +77,12 @@ public class IsohedralTilingSolver2DataBuilder {
 	// TODO add semicycles and a way to represent symmetries of polyforms
 
 
+	/**
+	 * Builds the edge data and validates it. The data is not validated again by solvers using it, unless its arrays are
+	 * set or handed out through its getters.
+	 *
+	 * @throws IllegalArgumentException If the vertex weights or types given are inconsistent
+	 */
 	public IsohedralTilingSolver2Data build() {
 		IsohedralTilingSolver2Data data = new IsohedralTilingSolver2Data(numEdges);
 		data.setDesiredVertexWeight(desiredVertexWeight);
@@ -86,6 +92,7 @@ public class IsohedralTilingSolver2DataBuilder {
 		data.setLeftVertexWeights(toIntArray(leftVertexWeights));
 		data.setEdgeTypes(toIntArray(edgeTypes));
 		data.setMatchTypes(toIntArray(matchTypes));
+		data.trust();
 		return data;
 	}
 
@@ -38,6 +38,10 @@ public class MirrorSymmetryDemo {
 		for (int[] canonicalSolution : canonicalSolutions) {
 			System.out.println(FormatUtils.stringify(canonicalSolution) + ": " + FormatUtils.formatSolution(canonicalSolution, data.getEdgeMirrors(), names));
 		}
+		System.out.println();
+
+		List<int[]> searchedCanonicalSolutions = solver.findCanonicalSolutions();
+		System.out.println("Canonical solutions found with symmetry breaking: " + searchedCanonicalSolutions.size() + " (" + solver.getStepsTaken() + " steps)");
 	}
 
 }
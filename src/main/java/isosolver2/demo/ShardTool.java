@@ -0,0 +1,191 @@
+package isosolver2.demo;
+
+import isosolver2.IsohedralTilingSolver2;
+import isosolver2.IsohedralTilingSolver2Data;
+import isosolver2.SolutionConsumer;
+import isosolver2.SolutionView;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits one search over several independent worker processes.
+ * The search tree is cut into prefixes at a fixed depth, and worker k of n solves every n-th prefix starting at k.
+ * Each worker writes its own shard file, which only appears once the worker is done, so a crashed worker can simply be
+ * run again. The shard files are then merged into one.
+ * <p>
+ * Usage:
+ * <pre>
+ * ShardTool list  &lt;depth&gt; &lt;vertexWeight&gt; &lt;cycle&gt;
+ * ShardTool run   &lt;depth&gt; &lt;vertexWeight&gt; &lt;cycle&gt; &lt;shardIndex&gt; &lt;numShards&gt; &lt;shardFile&gt; [solutions]
+ * ShardTool merge &lt;outputFile&gt; &lt;shardFile&gt;...
+ * </pre>
+ * The cycle is given as comma-separated vertex weights, e.g. {@code 1,2,1,3,1,1,3,2,1,1,2,2,3,1}.
+ * A shard file consists of a line {@code count <n>}, followed by one line per solution if solutions were requested.
+ */
+public class ShardTool {
+
+	private static final String COUNT_PREFIX = "count ";
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 4 && args[0].equals("list")) {
+			IsohedralTilingSolver2 solver = new IsohedralTilingSolver2(buildData(args[2], args[3]));
+			for (String prefixId : solver.enumeratePrefixes(Integer.parseInt(args[1]))) {
+				System.out.println(prefixId);
+			}
+		} else if ((args.length == 7 || args.length == 8) && args[0].equals("run")) {
+			boolean storeSolutions = args.length == 8 && args[7].equals("solutions");
+			runShard(Integer.parseInt(args[1]), buildData(args[2], args[3]), Integer.parseInt(args[4]), Integer.parseInt(args[5]), Paths.get(args[6]), storeSolutions);
+		} else if (args.length >= 2 && args[0].equals("merge")) {
+			Path[] shardFiles = Arrays.stream(args, 2, args.length).map(Paths::get).toArray(Path[]::new);
+			long count = mergeShards(Paths.get(args[1]), shardFiles);
+			System.out.println("Number of solutions: " + count);
+		} else {
+			System.err.println("Usage:");
+			System.err.println("  ShardTool list  <depth> <vertexWeight> <cycle>");
+			System.err.println("  ShardTool run   <depth> <vertexWeight> <cycle> <shardIndex> <numShards> <shardFile> [solutions]");
+			System.err.println("  ShardTool merge <outputFile> <shardFile>...");
+			System.exit(1);
+		}
+	}
+
+	private static IsohedralTilingSolver2Data buildData(String vertexWeight, String cycle) {
+		IsohedralTilingSolver2DataBuilder builder = new IsohedralTilingSolver2DataBuilder(Integer.parseInt(vertexWeight), true);
+		builder.addEdgeCycle(Arrays.stream(cycle.split(",")).mapToInt(Integer::parseInt).toArray());
+		return builder.build();
+	}
+
+	/**
+	 * Solves all prefixes belonging to one shard and writes the results to the given shard file.
+	 * The file is written under a temporary name first and only moved into place once complete.
+	 */
+	public static void runShard(int depth, IsohedralTilingSolver2Data data, int shardIndex, int numShards, Path shardFile, boolean storeSolutions) throws IOException {
+		if (numShards <= 0 || shardIndex < 0 || shardIndex >= numShards) {
+			throw new IllegalArgumentException("Shard index must be between 0 and the number of shards");
+		}
+		IsohedralTilingSolver2 solver = new IsohedralTilingSolver2(data);
+		List<String> prefixIds = solver.enumeratePrefixes(depth);
+		Path tempFile = shardFile.resolveSibling(shardFile.getFileName() + ".tmp");
+		if (!storeSolutions) {
+			long count = 0;
+			for (int i = shardIndex; i < prefixIds.size(); i += numShards) {
+				count += solver.countPrefixSolutions(prefixIds.get(i));
+			}
+			try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+				writer.write(COUNT_PREFIX + count);
+				writer.newLine();
+			}
+		} else {
+			// The count heads the file but is only known at the end, so the solutions are streamed to a file of their own
+			Path solutionFile = shardFile.resolveSibling(shardFile.getFileName() + ".solutions.tmp");
+			long count = 0;
+			try {
+				try (BufferedWriter solutionWriter = Files.newBufferedWriter(solutionFile, StandardCharsets.UTF_8)) {
+					LineConsumer consumer = new LineConsumer(solutionWriter, data.getNumEdges());
+					for (int i = shardIndex; i < prefixIds.size(); i += numShards) {
+						count += solver.solvePrefix(prefixIds.get(i), consumer);
+						consumer.rethrow();
+					}
+				}
+				try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+					writer.write(COUNT_PREFIX + count);
+					writer.newLine();
+					copyLines(solutionFile, writer);
+				}
+			} finally {
+				Files.deleteIfExists(solutionFile);
+			}
+		}
+		Files.move(tempFile, shardFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Writes each solution as one line, stopping the search at the first write that fails.
+	 */
+	private static class LineConsumer implements SolutionConsumer {
+		private final BufferedWriter writer;
+		private final int[] solution;
+		private IOException error;
+
+		LineConsumer(BufferedWriter writer, int numEdges) {
+			this.writer = writer;
+			this.solution = new int[numEdges];
+		}
+
+		@Override
+		public boolean accept(SolutionView view) {
+			view.copyTo(solution);
+			try {
+				writer.write(FormatUtils.stringify(solution));
+				writer.newLine();
+				return true;
+			} catch (IOException e) {
+				error = e;
+				return false;
+			}
+		}
+
+		/**
+		 * Throws the error of the write that stopped the search, if any.
+		 */
+		void rethrow() throws IOException {
+			if (error != null) {
+				throw error;
+			}
+		}
+	}
+
+	/**
+	 * Merges shard files into one file of the same format, summing their counts and concatenating their solutions.
+	 *
+	 * @return The total number of solutions
+	 */
+	public static long mergeShards(Path outputFile, Path... shardFiles) throws IOException {
+		long count = 0;
+		for (Path shardFile : shardFiles) {
+			count += readCount(shardFile);
+		}
+		try (BufferedWriter writer = Files.newBufferedWriter(outputFile, StandardCharsets.UTF_8)) {
+			writer.write(COUNT_PREFIX + count);
+			writer.newLine();
+			for (Path shardFile : shardFiles) {
+				try (BufferedReader reader = Files.newBufferedReader(shardFile, StandardCharsets.UTF_8)) {
+					reader.readLine();
+					for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+						writer.write(line);
+						writer.newLine();
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	private static long readCount(Path shardFile) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(shardFile, StandardCharsets.UTF_8)) {
+			String header = reader.readLine();
+			if (header == null || !header.startsWith(COUNT_PREFIX)) {
+				throw new IOException("Not a shard file: " + shardFile);
+			}
+			return Long.parseLong(header.substring(COUNT_PREFIX.length()));
+		}
+	}
+
+	private static void copyLines(Path source, Writer writer) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				writer.write(line);
+				writer.write(System.lineSeparator());
+			}
+		}
+	}
+}